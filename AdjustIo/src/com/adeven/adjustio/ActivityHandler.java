@@ -12,26 +12,17 @@ package com.adeven.adjustio;
 import static com.adeven.adjustio.Constants.LOGTAG;
 import static com.adeven.adjustio.Constants.ONE_MINUTE;
 import static com.adeven.adjustio.Constants.ONE_SECOND;
-import static com.adeven.adjustio.Constants.SESSION_STATE_FILENAME;
-import static com.adeven.adjustio.Constants.THIRTY_SECONDS;
 import static com.adeven.adjustio.Constants.UNKNOWN;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.NotSerializableException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OptionalDataException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.Activity;
 import android.content.Context;
@@ -48,19 +39,28 @@ import android.preference.PreferenceManager;
 
 public class ActivityHandler extends HandlerThread {
 
-    private static final long   TIMER_INTERVAL      = ONE_MINUTE;
-    private static final long   SESSION_INTERVAL    = THIRTY_SECONDS;
-    private static final long   SUBSESSION_INTERVAL = ONE_SECOND;
-    private static final String TIME_TRAVEL         = "Time travel!";
-
-    private final  SessionHandler           sessionHandler;
-    private        PackageHandler           packageHandler;
-    private        ActivityState            activityState;
-    private static ScheduledExecutorService timer;
-    private final  Context                  context;
-    private        String                   environment;
-    private        String                   defaultTracker;
-    private        boolean                  eventBuffering;
+    private static final long TIMER_INTERVAL         = ONE_MINUTE;
+    private static final long TIMER_START            = ONE_SECOND;
+    private static final long TRANSITION_GRACE       = 500; // below the subsession interval of the session engine
+    private static final int  MAX_PENDING_ACTIVITIES = 1000;
+
+    private volatile SessionHandler           sessionHandler; // null until the thread is running
+    private final    List<Message>            pendingMessages;
+    private          PackageHandler           packageHandler;
+    private final    SessionEngine            sessionEngine;
+    private final    ActivityStateStore       activityStateStore;
+    private final    Context                  context;
+    private final    AndroidPlatform          platform;
+    private          String                   environment;
+    private          String                   defaultTracker;
+    private          boolean                  eventBuffering;
+    private          FlushPolicy              flushPolicy;
+    private          EventAggregator          eventAggregator;
+    private volatile RateLimiter              rateLimiter;
+    private volatile AttributionCache         attributionCache; // null until the activity thread read it
+    private          long                     attributionTtl;
+    private final    AtomicInteger            pendingActivities;
+    private          boolean                  backgroundPending; // paused, waiting for the grace window
 
     private String appToken;
     private String macSha1;
@@ -69,75 +69,179 @@ public class ActivityHandler extends HandlerThread {
     private String fbAttributionId;
     private String userAgent;       // changes, should be updated periodically
     private String clientSdk;
-    private Map<String, String> deviceData;
+    private AttributeSet generalAttributes;  // shared by all packages, rebuilt when a general attribute changes
+    private FutureTask<Void> identifierTask; // collects the identifiers above during startup
 
     protected ActivityHandler(Activity activity) {
         super(LOGTAG, MIN_PRIORITY);
         setDaemon(true);
-        start();
-        sessionHandler = new SessionHandler(getLooper(), this);
+        Metrics.startupStarted();
+        pendingMessages = new ArrayList<Message>();
         context = activity.getApplicationContext();
+        platform = new AndroidPlatform(context);
+        sessionEngine = new SessionEngine(platform.getClock());
+        activityStateStore = new ActivityStateStore(platform.getStorage());
         clientSdk = Constants.CLIENT_SDK;
+        flushPolicy = FlushPolicy.getDefault();
+        rateLimiter = RateLimiter.getDefault();
+        attributionTtl = AttributionCache.DEFAULT_TTL;
+        pendingActivities = new AtomicInteger();
+
+        start(); // not waiting for the looper, see sendMessage
 
         Message message = Message.obtain();
         message.arg1 = SessionHandler.INIT_BUNDLE;
-        sessionHandler.sendMessage(message);
+        sendMessage(message);
     }
 
     protected ActivityHandler(Activity activity, String appToken, String environment, boolean eventBuffering) {
         super(LOGTAG, MIN_PRIORITY);
         setDaemon(true);
-        start();
-        sessionHandler = new SessionHandler(getLooper(), this);
+        Metrics.startupStarted();
+        pendingMessages = new ArrayList<Message>();
         context = activity.getApplicationContext();
+        platform = new AndroidPlatform(context);
+        sessionEngine = new SessionEngine(platform.getClock());
+        activityStateStore = new ActivityStateStore(platform.getStorage());
         clientSdk = Constants.CLIENT_SDK;
+        flushPolicy = FlushPolicy.getDefault();
+        rateLimiter = RateLimiter.getDefault();
+        attributionTtl = AttributionCache.DEFAULT_TTL;
+        pendingActivities = new AtomicInteger();
 
         this.appToken = appToken;
         this.environment = environment;
         this.eventBuffering = eventBuffering;
 
+        start(); // not waiting for the looper, see sendMessage
+
         Message message = Message.obtain();
         message.arg1 = SessionHandler.INIT_PRESET;
-        sessionHandler.sendMessage(message);
+        sendMessage(message);
     }
 
-    protected void setSdkPrefix(String sdkPrefx) {
-        clientSdk = String.format("%s@%s", sdkPrefx, clientSdk);
+    // the entry points below run in the calling thread, usually the main thread of the app,
+    // they must not wait for the activity thread or touch the disk
+
+    protected void setSdkPrefix(String sdkPrefix) {
+        Message message = Message.obtain();
+        message.arg1 = SessionHandler.SDK_PREFIX;
+        message.obj = sdkPrefix;
+        sendMessage(message);
     }
 
     protected void trackSubsessionStart() {
         Message message = Message.obtain();
         message.arg1 = SessionHandler.START;
-        sessionHandler.sendMessage(message);
+        sendMessage(message);
     }
 
     protected void trackSubsessionEnd() {
         Message message = Message.obtain();
         message.arg1 = SessionHandler.END;
-        sessionHandler.sendMessage(message);
+        sendMessage(message);
     }
 
-    protected void trackEvent(String eventToken, Map<String, String> parameters) {
+    protected TrackingStatus trackEvent(String eventToken, Map<String, String> parameters) {
+        TrackingStatus status = admitActivity(eventToken);
+        if (status != TrackingStatus.ACCEPTED) {
+            return status;
+        }
+
         PackageBuilder builder = new PackageBuilder();
+        builder.setPackageId(Tracing.nextPackageId());
         builder.setEventToken(eventToken);
         builder.setCallbackParameters(parameters);
+        Tracing.activityAccepted(builder.getPackageId());
 
         Message message = Message.obtain();
         message.arg1 = SessionHandler.EVENT;
         message.obj = builder;
-        sessionHandler.sendMessage(message);
+        sendMessage(message);
+        return status;
     }
 
-    protected void trackRevenue(double amountInCents, String eventToken, Map<String, String> parameters) {
+    protected TrackingStatus trackRevenue(double amountInCents, String eventToken, Map<String, String> parameters) {
+        TrackingStatus status = admitActivity(eventToken);
+        if (status != TrackingStatus.ACCEPTED) {
+            return status;
+        }
+
         PackageBuilder builder = new PackageBuilder();
+        builder.setPackageId(Tracing.nextPackageId());
         builder.setAmountInCents(amountInCents);
         builder.setEventToken(eventToken);
         builder.setCallbackParameters(parameters);
+        Tracing.activityAccepted(builder.getPackageId());
 
         Message message = Message.obtain();
         message.arg1 = SessionHandler.REVENUE;
         message.obj = builder;
-        sessionHandler.sendMessage(message);
+        sendMessage(message);
+        return status;
+    }
+
+    // runs in the calling thread, must stay cheap
+    private TrackingStatus admitActivity(String eventToken) {
+        RateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter != null && !rateLimiter.tryAcquire(eventToken)) {
+            long count = Metrics.activityThrottled();
+            if (Long.bitCount(count) == 1) {
+                Logger.warn(String.format(Locale.US, "Throttled %d activities so far", count));
+            }
+            return TrackingStatus.THROTTLED;
+        }
+
+        if (pendingActivities.incrementAndGet() > MAX_PENDING_ACTIVITIES) {
+            pendingActivities.decrementAndGet();
+            long count = Metrics.activityDropped();
+            if (Long.bitCount(count) == 1) {
+                Logger.warn(String.format(Locale.US, "Dropped %d activities so far, too many pending", count));
+            }
+            return TrackingStatus.DROPPED;
+        }
+
+        return TrackingStatus.ACCEPTED;
+    }
+
+    // null until the attribution file was read, and when the attribution expired
+    protected Attribution getAttribution() {
+        AttributionCache attributionCache = this.attributionCache;
+        return attributionCache != null ? attributionCache.get() : null;
+    }
+
+    protected void flush(FlushRequest flushRequest) {
+        Message message = Message.obtain();
+        message.arg1 = SessionHandler.FLUSH;
+        message.obj = flushRequest;
+        sendMessage(message);
+    }
+
+    @Override
+    protected void onLooperPrepared() {
+        SessionHandler handler = new SessionHandler(getLooper(), this);
+        synchronized (pendingMessages) {
+            for (Message message : pendingMessages) {
+                handler.sendMessage(message);
+            }
+            pendingMessages.clear();
+            sessionHandler = handler;
+        }
+    }
+
+    // messages sent before the thread is running are kept until it is, so the caller never waits
+    private void sendMessage(Message message) {
+        SessionHandler handler = sessionHandler;
+        if (null == handler) {
+            synchronized (pendingMessages) {
+                handler = sessionHandler;
+                if (null == handler) {
+                    pendingMessages.add(message);
+                    return;
+                }
+            }
+        }
+        handler.sendMessage(message);
     }
 
     private static final class SessionHandler extends Handler {
@@ -147,6 +251,11 @@ public class ActivityHandler extends HandlerThread {
         private static final int END         = 72650;
         private static final int EVENT       = 72660;
         private static final int REVENUE     = 72670;
+        private static final int FLUSH       = 72680;
+        private static final int AGGREGATE   = 72690;
+        private static final int TIMER       = 72700;
+        private static final int BACKGROUND  = 72710;
+        private static final int SDK_PREFIX  = 72720;
 
         private final WeakReference<ActivityHandler> sessionHandlerReference;
 
@@ -185,6 +294,23 @@ public class ActivityHandler extends HandlerThread {
                     PackageBuilder revenueBuilder = (PackageBuilder) message.obj;
                     sessionHandler.trackRevenueInternal(revenueBuilder);
                     break;
+                case FLUSH:
+                    FlushRequest flushRequest = (FlushRequest) message.obj;
+                    sessionHandler.flushInternal(flushRequest);
+                    break;
+                case AGGREGATE:
+                    sessionHandler.transferAggregatePackage();
+                    break;
+                case TIMER:
+                    sessionHandler.timerFired();
+                    break;
+                case BACKGROUND:
+                    sessionHandler.backgroundInternal();
+                    break;
+                case SDK_PREFIX:
+                    String sdkPrefix = (String) message.obj;
+                    sessionHandler.setSdkPrefixInternal(sdkPrefix);
+                    break;
             }
         }
     }
@@ -195,24 +321,65 @@ public class ActivityHandler extends HandlerThread {
         } else {
             setEnvironment(environment);
             setEventBuffering(eventBuffering);
+            rateLimiter = null; // no configuration, no limit
         }
 
         if (!canInit()) {
             return;
         }
 
+        // the stages run concurrently: the package handler loads the queue and creates the transport
+        // on its own threads, the identifiers get collected on the startup thread and the activity
+        // state gets read here. Only the general attributes have to wait for the identifiers.
+        AttributionCache attributionCache = new AttributionCache(platform.getStorage(), platform.getClock(), attributionTtl);
+        packageHandler = new PackageHandler(platform, flushPolicy, attributionCache);
+        startIdentifierCollection();
+        sessionEngine.setActivityState(activityStateStore.read());
+        attributionCache.read();
+        this.attributionCache = attributionCache;
+    }
+
+    private void startIdentifierCollection() {
+        identifierTask = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                collectIdentifiers();
+                return null;
+            }
+        });
+
+        Thread startupThread = new Thread(identifierTask, LOGTAG);
+        startupThread.setPriority(MIN_PRIORITY);
+        startupThread.setDaemon(true);
+        startupThread.start();
+    }
+
+    // runs in the startup thread, the fields are read after waitForIdentifiers
+    private void collectIdentifiers() {
         String macAddress = Util.getMacAddress(context);
         String macShort = macAddress.replaceAll(":", "");
 
-        macSha1 = Util.sha1(macAddress);
-        macShortMd5 = Util.md5(macShort);
+        macSha1 = Encoding.sha1(macAddress);
+        macShortMd5 = Encoding.md5(macShort);
         androidId = Util.getAndroidId(context);
         fbAttributionId = Util.getAttributionId(context);
-        deviceData = Util.getDeviceData(context);
+        platform.getDeviceData(); // cached by the platform, so the first request does not build it
         userAgent = Util.getUserAgent(context);
+    }
 
-        packageHandler = new PackageHandler(context);
-        readActivityState();
+    private void waitForIdentifiers() {
+        if (null == identifierTask) {
+            return;
+        }
+
+        try {
+            identifierTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Logger.error(String.format("Failed to collect device identifiers (%s)", e.getCause()));
+        }
+        identifierTask = null;
     }
 
     private boolean canInit() {
@@ -222,61 +389,39 @@ public class ActivityHandler extends HandlerThread {
             && checkPermissions(context);
     }
 
+    private void setSdkPrefixInternal(String sdkPrefix) {
+        clientSdk = String.format("%s@%s", sdkPrefix, clientSdk);
+        generalAttributes = null;
+    }
+
     private void startInternal() {
         if (!checkAppTokenNotNull(appToken)) {
             return;
         }
 
-        packageHandler.resumeSending();
-        startTimer();
-
-        long now = System.currentTimeMillis();
-
-        // very first session
-        if (null == activityState) {
-            activityState = new ActivityState();
-            activityState.sessionCount = 1; // this is the first session
-            activityState.createdAt = now;  // starting now
-
-            transferSessionPackage();
-            activityState.resetSessionAttributes(now);
-            writeActivityState();
-            Logger.info("First session");
-            return;
-        }
+        // a pause right before this resume was just a switch between two activities
+        if (backgroundPending) {
+            sessionHandler.removeMessages(SessionHandler.BACKGROUND);
+            backgroundPending = false;
+            Metrics.transitionCoalesced();
 
-        long lastInterval = now - activityState.lastActivity;
-        if (lastInterval < 0) {
-            Logger.error(TIME_TRAVEL);
-            activityState.lastActivity = now;
-            writeActivityState();
+            PackageBuilder sessionBuilder = sessionEngine.startSubsession();
+            if (sessionBuilder != null) {
+                transferSessionPackage(sessionBuilder);
+                writeActivityState();
+            }
             return;
         }
 
-        // new session
-        if (lastInterval > SESSION_INTERVAL) {
-            activityState.sessionCount++;
-            activityState.createdAt = now;
-            activityState.lastInterval = lastInterval;
-
-            transferSessionPackage();
-            activityState.resetSessionAttributes(now);
-            writeActivityState();
-            Logger.debug(String.format(Locale.US,
-                                       "Session %d", activityState.sessionCount));
-            return;
-        }
+        // connect while the session package gets built and written
+        packageHandler.connect();
+        packageHandler.resumeSending();
+        startTimer();
 
-        // new subsession
-        if (lastInterval > SUBSESSION_INTERVAL) {
-            activityState.subsessionCount++;
-            Logger.info(String.format(Locale.US,
-                                      "Started subsession %d of session %d",
-                                      activityState.subsessionCount,
-                                      activityState.sessionCount));
+        PackageBuilder sessionBuilder = sessionEngine.startSubsession();
+        if (sessionBuilder != null) {
+            transferSessionPackage(sessionBuilder);
         }
-        activityState.sessionLength += lastInterval;
-        activityState.lastActivity = now;
         writeActivityState();
     }
 
@@ -285,159 +430,182 @@ public class ActivityHandler extends HandlerThread {
             return;
         }
 
-        packageHandler.pauseSending();
+        sessionEngine.update();
+
+        // wait for a resume before stopping the timer, pausing the handlers and writing the state
+        backgroundPending = true;
+        Message message = Message.obtain();
+        message.what = SessionHandler.BACKGROUND;
+        message.arg1 = SessionHandler.BACKGROUND;
+        sessionHandler.sendMessageDelayed(message, TRANSITION_GRACE);
+    }
+
+    private void backgroundInternal() {
+        if (!backgroundPending) {
+            return;
+        }
+        backgroundPending = false;
+
+        transferAggregatePackage();
         stopTimer();
-        updateActivityState();
+        packageHandler.pauseSending();
+        if (flushPolicy.isFlushOnBackground()) {
+            packageHandler.flushPackages();
+        }
         writeActivityState();
     }
 
     private void trackEventInternal(PackageBuilder eventBuilder) {
+        pendingActivities.decrementAndGet();
         if (!canTrackEvent(eventBuilder)) {
+            Tracing.packageDropped(eventBuilder.getPackageId());
+            return;
+        }
+        if (aggregateEvent(eventBuilder)) {
             return;
         }
-
-        activityState.createdAt = System.currentTimeMillis();
-        activityState.eventCount++;
-        updateActivityState();
 
         injectGeneralAttributes(eventBuilder);
-        activityState.injectEventAttributes(eventBuilder);
+        sessionEngine.trackEvent(eventBuilder);
         ActivityPackage eventPackage = eventBuilder.buildEventPackage();
         packageHandler.addPackage(eventPackage);
 
         if (eventBuffering) {
             Logger.info(String.format("Buffered event %s", eventPackage.getSuffix()));
+            packageHandler.checkFlushPolicy();
         } else {
             packageHandler.sendFirstPackage();
         }
 
         writeActivityState();
-        Logger.debug(String.format(Locale.US, "Event %d", activityState.eventCount));
+        Logger.debug(String.format(Locale.US, "Event %d", sessionEngine.getActivityState().eventCount));
     }
 
 
     private void trackRevenueInternal(PackageBuilder revenueBuilder) {
+        pendingActivities.decrementAndGet();
         if (!canTrackRevenue(revenueBuilder)) {
+            Tracing.packageDropped(revenueBuilder.getPackageId());
+            return;
+        }
+        if (aggregateEvent(revenueBuilder)) {
             return;
         }
-
-        activityState.createdAt = System.currentTimeMillis();
-        activityState.eventCount++;
-        updateActivityState();
 
         injectGeneralAttributes(revenueBuilder);
-        activityState.injectEventAttributes(revenueBuilder);
+        sessionEngine.trackEvent(revenueBuilder);
         ActivityPackage eventPackage = revenueBuilder.buildRevenuePackage();
         packageHandler.addPackage(eventPackage);
 
         if (eventBuffering) {
             Logger.info(String.format("Buffered revenue %s", eventPackage.getSuffix()));
+            packageHandler.checkFlushPolicy();
         } else {
             packageHandler.sendFirstPackage();
         }
 
         writeActivityState();
-        Logger.debug(String.format(Locale.US, "Event %d (revenue)", activityState.eventCount));
+        Logger.debug(String.format(Locale.US, "Event %d (revenue)", sessionEngine.getActivityState().eventCount));
     }
 
-    private boolean canTrackEvent(PackageBuilder revenueBuilder) {
-        return checkAppTokenNotNull(appToken)
-            && checkActivityState(activityState)
-            && revenueBuilder.isValidForEvent();
-    }
+    // count the event instead of building a package if its token is aggregated
+    private boolean aggregateEvent(PackageBuilder builder) {
+        if (null == eventAggregator || EventAggregator.isEndpointMissing()) {
+            return false;
+        }
 
-    private boolean canTrackRevenue(PackageBuilder revenueBuilder) {
-        return checkAppTokenNotNull(appToken)
-            && checkActivityState(activityState)
-            && revenueBuilder.isValidForRevenue();
-    }
+        long now = platform.getClock().currentTimeMillis();
+        boolean firstInWindow = eventAggregator.isEmpty();
+        if (!eventAggregator.add(builder.getEventToken(), builder.getAmountInCents(), builder.getPackageId(), now)) {
+            return false;
+        }
 
-    private void updateActivityState() {
-        if (!checkActivityState(activityState)) {
-            return;
+        sessionEngine.countEvent();
+
+        if (firstInWindow) {
+            Message message = Message.obtain();
+            message.what = SessionHandler.AGGREGATE;
+            message.arg1 = SessionHandler.AGGREGATE;
+            sessionHandler.sendMessageDelayed(message, eventAggregator.getWindow());
         }
+        return true;
+    }
 
-        long now = System.currentTimeMillis();
-        long lastInterval = now - activityState.lastActivity;
-        if (lastInterval < 0) {
-            Logger.error(TIME_TRAVEL);
-            activityState.lastActivity = now;
+    private void transferAggregatePackage() {
+        if (null == eventAggregator || eventAggregator.isEmpty()) {
             return;
         }
+        sessionHandler.removeMessages(SessionHandler.AGGREGATE);
 
-        // ignore late updates
-        if (lastInterval > SESSION_INTERVAL) {
-            return;
+        PackageBuilder builder = new PackageBuilder();
+        builder.setPackageId(Tracing.nextPackageId());
+        Tracing.activityAccepted(builder.getPackageId());
+        injectGeneralAttributes(builder);
+        sessionEngine.injectAggregateAttributes(builder);
+        eventAggregator.injectAggregates(builder);
+        eventAggregator.reset();
+
+        ActivityPackage aggregatePackage = builder.buildAggregatePackage();
+        packageHandler.addPackage(aggregatePackage);
+
+        if (eventBuffering) {
+            packageHandler.checkFlushPolicy();
+        } else {
+            packageHandler.sendFirstPackage();
         }
 
-        activityState.sessionLength += lastInterval;
-        activityState.timeSpent += lastInterval;
-        activityState.lastActivity = now;
+        writeActivityState();
+        Logger.debug(String.format("Aggregated events%s", aggregatePackage.getSuffix()));
     }
 
-    private void readActivityState() {
-        try {
-            FileInputStream inputStream = context.openFileInput(SESSION_STATE_FILENAME);
-            BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
-            ObjectInputStream objectStream = new ObjectInputStream(bufferedStream);
+    private void flushInternal(FlushRequest flushRequest) {
+        if (null == packageHandler) {
+            Logger.error("Nothing to flush");
+            flushRequest.finish(0, false);
+            return;
+        }
 
-            try {
-                activityState = (ActivityState) objectStream.readObject();
-                Logger.debug(String.format("Read activity state: %s", activityState));
-                return;
-            } catch (ClassNotFoundException e) {
-                Logger.error("Failed to find activity state class");
-            } catch (OptionalDataException e) {
-                /* no-op */
-            } catch (IOException e) {
-                Logger.error("Failed to read activity states object");
-            } catch (ClassCastException e) {
-                Logger.error("Failed to cast activity state object");
-            } finally {
-                objectStream.close();
-            }
+        transferAggregatePackage();
+        packageHandler.flushPackages(flushRequest);
+    }
 
-        } catch (FileNotFoundException e) {
-            Logger.verbose("Activity state file not found");
-        } catch (Exception e) {
-            Logger.error(String.format("Failed to open activity state file for reading (%s)", e));
-        }
+    private boolean canTrackEvent(PackageBuilder revenueBuilder) {
+        return checkAppTokenNotNull(appToken)
+            && sessionEngine.hasActivityState()
+            && revenueBuilder.isValidForEvent();
+    }
 
-        // start with a fresh activity state in case of any exception
-        activityState = null;
+    private boolean canTrackRevenue(PackageBuilder revenueBuilder) {
+        return checkAppTokenNotNull(appToken)
+            && sessionEngine.hasActivityState()
+            && revenueBuilder.isValidForRevenue();
     }
 
     private void writeActivityState() {
-        try {
-            FileOutputStream outputStream = context.openFileOutput(SESSION_STATE_FILENAME, Context.MODE_PRIVATE);
-            BufferedOutputStream bufferedStream = new BufferedOutputStream(outputStream);
-            ObjectOutputStream objectStream = new ObjectOutputStream(bufferedStream);
-
-            try {
-                objectStream.writeObject(activityState);
-                Logger.verbose(String.format("Wrote activity state: %s", activityState));
-            } catch (NotSerializableException e) {
-                Logger.error("Failed to serialize activity state");
-            } finally {
-                objectStream.close();
-            }
-
-        } catch (Exception e) {
-            Logger.error(String.format("Failed to open activity state for writing (%s)", e));
-        }
+        activityStateStore.write(sessionEngine.getActivityState());
     }
 
-    private void transferSessionPackage() {
-        PackageBuilder builder = new PackageBuilder();
+    private void transferSessionPackage(PackageBuilder builder) {
+        builder.setPackageId(Tracing.nextPackageId());
+        Tracing.activityAccepted(builder.getPackageId());
         injectGeneralAttributes(builder);
         injectReferrer(builder);
-        activityState.injectSessionAttributes(builder);
         ActivityPackage sessionPackage = builder.buildSessionPackage();
         packageHandler.addPackage(sessionPackage);
         packageHandler.sendFirstPackage();
     }
 
     private void injectGeneralAttributes(PackageBuilder builder) {
+        if (null == generalAttributes) {
+            waitForIdentifiers();
+            generalAttributes = buildGeneralAttributes();
+        }
+        builder.setAttributeSet(generalAttributes);
+        builder.setDefaultTracker(defaultTracker);
+    }
+
+    private AttributeSet buildGeneralAttributes() {
+        PackageBuilder builder = new PackageBuilder();
         builder.setAppToken(appToken);
         builder.setMacShortMd5(macShortMd5);
         builder.setMacSha1(macSha1);
@@ -446,7 +614,7 @@ public class ActivityHandler extends HandlerThread {
         builder.setUserAgent(userAgent);
         builder.setClientSdk(clientSdk);
         builder.setEnvironment(environment);
-        builder.setDefaultTracker(defaultTracker);
+        return builder.buildAttributeSet();
     }
 
     private void injectReferrer(PackageBuilder builder) {
@@ -459,31 +627,33 @@ public class ActivityHandler extends HandlerThread {
         }
     }
 
+    // the timer runs as messages on the session thread, so it needs no thread of its own
     private void startTimer() {
-        if (timer != null) {
-            stopTimer();
-        }
-        timer = Executors.newSingleThreadScheduledExecutor();
-        timer.scheduleWithFixedDelay(new Runnable() {
-            @Override
-            public void run() {
-                timerFired();
-            }
-        }, 1000, TIMER_INTERVAL, TimeUnit.MILLISECONDS);
+        stopTimer();
+        scheduleTimer(TIMER_START);
     }
 
     private void stopTimer() {
-        try {
-            timer.shutdown();
-        } catch (NullPointerException e) {
-            Logger.error("No timer found");
-        }
+        sessionHandler.removeMessages(SessionHandler.TIMER);
+    }
+
+    private void scheduleTimer(long delay) {
+        Message message = Message.obtain();
+        message.what = SessionHandler.TIMER;
+        message.arg1 = SessionHandler.TIMER;
+        sessionHandler.sendMessageDelayed(message, delay);
     }
 
     private void timerFired() {
-        packageHandler.sendFirstPackage();
+        scheduleTimer(TIMER_INTERVAL);
 
-        updateActivityState();
+        if (eventBuffering) {
+            packageHandler.checkFlushPolicy();
+        } else {
+            packageHandler.sendFirstPackage();
+        }
+
+        sessionEngine.update();
         writeActivityState();
     }
 
@@ -504,6 +674,7 @@ public class ActivityHandler extends HandlerThread {
     private void processApplicationBundle() {
         Bundle bundle = getApplicationBundle();
         if (null == bundle) {
+            rateLimiter = null;
             return;
         }
 
@@ -511,9 +682,39 @@ public class ActivityHandler extends HandlerThread {
         setEnvironment(bundle.getString("AdjustIoEnvironment"));
         setDefaultTracker(bundle.getString("AdjustIoDefaultTracker"));
         setEventBuffering(bundle.getBoolean("AdjustIoEventBuffering"));
+        setFlushPolicy(bundle);
+        setRateLimiter(bundle);
+        setEventAggregator(bundle);
+        platform.setPersistentTlsSessions(bundle.getBoolean("AdjustIoTlsSessionCache"));
+        if (bundle.containsKey("AdjustIoAttributionTtl")) {
+            attributionTtl = Math.max(1, bundle.getInt("AdjustIoAttributionTtl")) * (long) ONE_SECOND;
+        }
         Logger.setLogLevelString(bundle.getString("AdjustIoLogLevel"));
     }
 
+    private void setFlushPolicy(Bundle bundle) {
+        if (bundle.containsKey("AdjustIoFlushMaxPackages")) {
+            flushPolicy.setMaxPackageCount(bundle.getInt("AdjustIoFlushMaxPackages"));
+        }
+        if (bundle.containsKey("AdjustIoFlushMaxBytes")) {
+            flushPolicy.setMaxQueueBytes(bundle.getInt("AdjustIoFlushMaxBytes"));
+        }
+        if (bundle.containsKey("AdjustIoFlushMaxAge")) {
+            flushPolicy.setMaxPackageAge(bundle.getInt("AdjustIoFlushMaxAge") * (long) ONE_SECOND);
+        }
+        if (bundle.containsKey("AdjustIoFlushMaxIdle")) {
+            flushPolicy.setMaxIdleTime(bundle.getInt("AdjustIoFlushMaxIdle") * (long) ONE_SECOND);
+        }
+        flushPolicy.setFlushOnBackground(bundle.getBoolean("AdjustIoFlushOnBackground"));
+        if (bundle.containsKey("AdjustIoCatchUpThreshold")) {
+            flushPolicy.setCatchUpThreshold(bundle.getInt("AdjustIoCatchUpThreshold"));
+        }
+        if (bundle.containsKey("AdjustIoCatchUpBandwidth")) {
+            flushPolicy.setCatchUpBandwidth(bundle.getInt("AdjustIoCatchUpBandwidth") * 1024L); // kilobytes per second
+        }
+        Logger.debug(String.format("Flush policy: %s", flushPolicy));
+    }
+
     private void setEnvironment(String environment) {
         if (null == environment) {
             Logger.Assert("Missing environment");
@@ -533,6 +734,43 @@ public class ActivityHandler extends HandlerThread {
         }
     }
 
+    private void setRateLimiter(Bundle bundle) {
+        RateLimiter rateLimiter = new RateLimiter(
+            getDouble(bundle, "AdjustIoEventRateLimit"),
+            getDouble(bundle, "AdjustIoEventRateBurst"),
+            getDouble(bundle, "AdjustIoEventTokenRateLimit"),
+            getDouble(bundle, "AdjustIoEventTokenRateBurst"));
+
+        // replaces the default limit
+        if (rateLimiter.isEnabled()) {
+            Logger.info(String.format("Rate limit: %s", rateLimiter));
+            this.rateLimiter = rateLimiter;
+        } else {
+            this.rateLimiter = null;
+        }
+    }
+
+    private void setEventAggregator(Bundle bundle) {
+        long window = Math.max(1, bundle.getInt("AdjustIoAggregationWindow", 60)) * (long) ONE_SECOND;
+        eventAggregator = EventAggregator.fromString(bundle.getString("AdjustIoAggregatedEvents"), window);
+
+        if (eventAggregator != null) {
+            Logger.info(String.format("Aggregating events: %s", eventAggregator));
+        }
+    }
+
+    // meta-data values are parsed as Integer or Float depending on their format
+    private static double getDouble(Bundle bundle, String key) {
+        Object value = bundle.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value != null) {
+            Logger.error(String.format("Malformed %s '%s'", key, value));
+        }
+        return 0;
+    }
+
     private void setEventBuffering(boolean eventBuffering) {
         if (eventBuffering) {
             Logger.info("Event buffering is enabled");
@@ -572,14 +810,6 @@ public class ActivityHandler extends HandlerThread {
         return result == PackageManager.PERMISSION_GRANTED;
     }
 
-    private static boolean checkActivityState(ActivityState activityState) {
-        if (null == activityState) {
-            Logger.error("Missing activity state.");
-            return false;
-        }
-        return true;
-    }
-
     private static boolean checkAppTokenNotNull(String appToken) {
         if (null == appToken) {
             Logger.error("Missing App Token.");
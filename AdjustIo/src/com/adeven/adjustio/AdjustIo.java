@@ -10,8 +10,11 @@
 package com.adeven.adjustio;
 
 import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
 import static com.adeven.adjustio.Constants.NO_ACTIVITY_HANDLER_FOUND;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * The main interface to AdjustIo.
@@ -21,28 +24,83 @@ import java.util.Map;
  */
 public class AdjustIo {
 
+    static {
+        Logger.setLogSink(new AndroidLogSink());
+    }
+
     /**
      * Tell AdjustIo that an activity did resume.
      * <p/>
      * This is used to initialize AdjustIo and keep track of the current session state.
-     * Call this in the onResume method of every activity of your app.
+     * Call this in the onResume method of every activity of your app,
+     * unless you use {@link #trackLifecycle(Application)}.
      *
      * @param activity The activity that has just resumed.
      */
     public static void onResume(Activity activity) {
-        if (null == activityHandler) {
-            activityHandler = new ActivityHandler(activity);
+        if (lifecycleTracker != null) {
+            return; // the lifecycle tracker already tracks the sessions
         }
-        activityHandler.trackSubsessionStart();
+        AdjustIo.foreground(activity);
     }
 
     /**
      * Tell AdjustIo that an activity will pause.
      * <p/>
      * This is used to calculate session attributes like session length and subsession count.
-     * Call this in the onPause method of every activity of your app.
+     * Call this in the onPause method of every activity of your app,
+     * unless you use {@link #trackLifecycle(Application)}.
      */
     public static void onPause() {
+        if (lifecycleTracker != null) {
+            return;
+        }
+        AdjustIo.background();
+    }
+
+    /**
+     * Let AdjustIo track sessions by itself instead of calling
+     * {@link #onResume(Activity)} and {@link #onPause()} in every activity.
+     * <p/>
+     * Call this once in the onCreate method of your Application class. AdjustIo
+     * then only gets notified when your app comes to the foreground or goes to
+     * the background, calls of onResume and onPause are ignored. This needs
+     * Android 4.0 (API level 14) or later. On older devices it returns false
+     * and you have to call onResume and onPause yourself.
+     *
+     * @param application The application of your app.
+     * @return Whether the sessions are tracked automatically now.
+     */
+    public static boolean trackLifecycle(Application application) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            Logger.warn("Automatic lifecycle tracking requires API level 14, call onResume and onPause instead");
+            return false;
+        }
+        if (lifecycleTracker != null) {
+            return true;
+        }
+
+        LifecycleTracker tracker = new LifecycleTracker();
+        application.registerActivityLifecycleCallbacks(tracker);
+        lifecycleTracker = tracker;
+        return true;
+    }
+
+    protected static void foreground(Activity activity) {
+        ActivityHandler handler = activityHandler;
+        if (null == handler) {
+            // two threads must not both create a handler, each would work on the same files
+            synchronized (AdjustIo.class) {
+                if (null == activityHandler) {
+                    activityHandler = new ActivityHandler(activity);
+                }
+                handler = activityHandler;
+            }
+        }
+        handler.trackSubsessionStart();
+    }
+
+    protected static void background() {
         try {
             activityHandler.trackSubsessionEnd();
         } catch (NullPointerException e) {
@@ -68,10 +126,24 @@ public class AdjustIo {
     }
 
     public static void trackEvent(String eventToken, Map<String, String> parameters) {
+        AdjustIo.tryTrackEvent(eventToken, parameters);
+    }
+
+    /**
+     * Same as {@link #trackEvent(String, Map)}, but tells whether the event was accepted.
+     * <p/>
+     * Events can get throttled when you configured a rate limit and dropped
+     * when AdjustIo is not initialized or has too many pending activities.
+     *
+     * @return The {@link TrackingStatus} of this event.
+     */
+    public static TrackingStatus tryTrackEvent(String eventToken, Map<String, String> parameters) {
         try {
-            activityHandler.trackEvent(eventToken, parameters);
+            return activityHandler.trackEvent(eventToken, parameters);
         } catch (NullPointerException e) {
             Logger.error(NO_ACTIVITY_HANDLER_FOUND);
+            Metrics.activityDropped();
+            return TrackingStatus.DROPPED;
         }
     }
 
@@ -98,16 +170,142 @@ public class AdjustIo {
     }
 
     public static void trackRevenue(double amountInCents, String eventToken, Map<String, String> parameters) {
+        AdjustIo.tryTrackRevenue(amountInCents, eventToken, parameters);
+    }
+
+    /**
+     * Same as {@link #trackRevenue(double, String, Map)}, but tells whether the revenue was accepted.
+     *
+     * @return The {@link TrackingStatus} of this revenue event.
+     */
+    public static TrackingStatus tryTrackRevenue(double amountInCents, String eventToken, Map<String, String> parameters) {
+        try {
+            return activityHandler.trackRevenue(amountInCents, eventToken, parameters);
+        } catch (NullPointerException e) {
+            Logger.error(NO_ACTIVITY_HANDLER_FOUND);
+            Metrics.activityDropped();
+            return TrackingStatus.DROPPED;
+        }
+    }
+
+    /**
+     * @return The number of events and revenues discarded by the rate limit.
+     */
+    public static long getThrottledCount() {
+        return Metrics.getThrottledActivities();
+    }
+
+    /**
+     * @return The number of events and revenues dropped because of too much pending work.
+     */
+    public static long getDroppedCount() {
+        return Metrics.getDroppedActivities();
+    }
+
+    /**
+     * Get a snapshot of the metrics of the tracking pipeline.
+     * <p/>
+     * This includes queue depth, delivery latencies, bytes written and sent,
+     * retries and failures. Use it to forward these numbers to your own
+     * telemetry. Taking a snapshot is cheap and can be done on any thread.
+     *
+     * @return An immutable {@link MetricsSnapshot}.
+     */
+    public static MetricsSnapshot getMetrics() {
+        return Metrics.snapshot();
+    }
+
+    /**
+     * Register a listener for the steps of every package through the tracking pipeline.
+     * <p/>
+     * Use this to trace single packages, see {@link PipelineListener}.
+     * Without a listener there is close to no overhead.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public static void setPipelineListener(PipelineListener listener) {
+        Tracing.setListener(listener);
+    }
+
+    /**
+     * Get the tracker the server attributed this install to.
+     * <p/>
+     * The attribution is cached from the answer to the last session package,
+     * so this returns immediately without a request and can be called on the
+     * main thread.
+     *
+     * @return The cached {@link Attribution}, or null if there is none yet
+     *         or it is older than the configured time to live.
+     */
+    public static Attribution getAttribution() {
         try {
-            activityHandler.trackRevenue(amountInCents, eventToken, parameters);
+            return activityHandler.getAttribution();
         } catch (NullPointerException e) {
             Logger.error(NO_ACTIVITY_HANDLER_FOUND);
+            return null;
         }
     }
 
+    /**
+     * Register a listener to get notified when the attribution changes.
+     * <p/>
+     * It gets called once for the first attribution and again whenever the
+     * server attributes this install to another tracker, see
+     * {@link OnAttributionChangedListener}.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public static void setOnAttributionChangedListener(OnAttributionChangedListener listener) {
+        AttributionCache.setListener(listener);
+    }
+
+    /**
+     * Tell AdjustIo to send all tracked activities now.
+     * <p/>
+     * This can be used before a user logs out or at the end of a test. It
+     * returns immediately, the packages get sent in the background. Don't
+     * wait for the returned future on the main thread.
+     *
+     * @param timeoutInMilliseconds Stop flushing after this time, even if
+     *                              there are still packages left.
+     * @param listener Optional listener to get notified when the flush is
+     *                 done (see {@link OnFlushFinishedListener}).
+     * @return A future that completes with the outcome of the flush.
+     */
+    public static Future<FlushResult> flush(long timeoutInMilliseconds) {
+        return AdjustIo.flush(timeoutInMilliseconds, null);
+    }
+
+    public static Future<FlushResult> flush(long timeoutInMilliseconds, OnFlushFinishedListener listener) {
+        final FlushRequest flushRequest = new FlushRequest(timeoutInMilliseconds, listener);
+        try {
+            activityHandler.flush(flushRequest);
+        } catch (NullPointerException e) {
+            Logger.error(NO_ACTIVITY_HANDLER_FOUND);
+            // the listener expects a background thread, even when there is nothing to flush
+            getFallbackScheduler().post(new Runnable() {
+                @Override
+                public void run() {
+                    flushRequest.finish(0, false);
+                }
+            });
+        }
+        return flushRequest;
+    }
+
+    // the executor starts its thread with the first task only
+    private static synchronized Scheduler getFallbackScheduler() {
+        if (null == fallbackScheduler) {
+            fallbackScheduler = new ExecutorScheduler(Constants.LOGTAG);
+        }
+        return fallbackScheduler;
+    }
+
     // Special appDidLaunch method used by SDK wrappers such as our Adobe Air SDK.
     protected static void appDidLaunch(Activity activity, String appToken, String environment, boolean eventBuffering) {
-        activityHandler = new ActivityHandler(activity, appToken, environment, eventBuffering);
+        synchronized (AdjustIo.class) {
+            activityHandler = new ActivityHandler(activity, appToken, environment, eventBuffering);
+        }
     }
 
     // Special method used by SDK wrappers such as our Adobe Air SDK.
@@ -118,6 +316,18 @@ public class AdjustIo {
     /**
      * Every activity will get forwarded to this handler to be processed in the background.
      */
-    private static ActivityHandler activityHandler;
+    private static volatile ActivityHandler activityHandler;
+
+    /**
+     * Set when the sessions are tracked from the activity lifecycle, kept as
+     * Object so that this class loads on devices without lifecycle callbacks.
+     */
+    private static volatile Object lifecycleTracker;
+
+    /**
+     * Notifies the listeners of flushes without an activity handler, created
+     * on the first such flush.
+     */
+    private static Scheduler fallbackScheduler;
 
 }
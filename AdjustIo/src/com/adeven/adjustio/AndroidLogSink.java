@@ -0,0 +1,24 @@
+//
+//  AndroidLogSink.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import static com.adeven.adjustio.Constants.LOGTAG;
+
+import android.util.Log;
+
+/**
+ * Writes log messages to logcat.
+ */
+public class AndroidLogSink implements LogSink {
+    @Override
+    public void log(Logger.LogLevel logLevel, String message) {
+        Log.println(logLevel.getAndroidLogLevel(), LOGTAG, message);
+    }
+}
@@ -0,0 +1,100 @@
+//
+//  AndroidPlatform.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import android.content.Context;
+import android.net.SSLSessionCache;
+
+/**
+ * Runs the tracking pipeline on Android: private app files, handler threads
+ * and the bundled Apache HTTP client.
+ */
+public class AndroidPlatform implements Platform {
+    private final Context             context;
+    private final Storage             storage;
+    private final DnsCache            dnsCache;
+    private       Map<String, String> deviceData;
+    private       boolean             persistentTlsSessions;
+    private       TlsSocketFactory    tlsSocketFactory; // shared, so all transports use one session cache
+
+    protected AndroidPlatform(final Context context) {
+        this.context = context;
+        this.storage = new Storage() {
+            @Override
+            public InputStream openInput(String name) throws IOException {
+                return context.openFileInput(name);
+            }
+
+            @Override
+            public OutputStream openOutput(String name) throws IOException {
+                return context.openFileOutput(name, Context.MODE_PRIVATE);
+            }
+        };
+        this.dnsCache = new DnsCache(getClock());
+    }
+
+    @Override
+    public Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public Clock getClock() {
+        return Clock.SYSTEM;
+    }
+
+    @Override
+    public Scheduler newScheduler(String name) {
+        return new HandlerScheduler(name);
+    }
+
+    @Override
+    public Transport newTransport() {
+        return new HttpClientTransport(dnsCache, getTlsSocketFactory());
+    }
+
+    /**
+     * Keeps the TLS sessions in the app files, so the first connection after
+     * a restart can resume the last session. Takes effect for the transports
+     * created afterwards.
+     */
+    protected synchronized void setPersistentTlsSessions(boolean persistentTlsSessions) {
+        this.persistentTlsSessions = persistentTlsSessions;
+    }
+
+    @Override
+    public synchronized Map<String, String> getDeviceData() {
+        if (null == deviceData) {
+            deviceData = Util.getDeviceData(context);
+        }
+        return deviceData;
+    }
+
+    private synchronized TlsSocketFactory getTlsSocketFactory() {
+        if (null == tlsSocketFactory) {
+            tlsSocketFactory = new TlsSocketFactory(dnsCache, getSessionCache());
+        }
+        return tlsSocketFactory;
+    }
+
+    // null keeps the sessions in memory only
+    private SSLSessionCache getSessionCache() {
+        if (!persistentTlsSessions) {
+            return null;
+        }
+
+        return new SSLSessionCache(context);
+    }
+}
@@ -0,0 +1,42 @@
+//
+//  HandlerScheduler.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+/**
+ * Runs the tasks on a handler thread with low priority.
+ */
+public class HandlerScheduler extends HandlerThread implements Scheduler {
+    private final Handler handler;
+
+    protected HandlerScheduler(String name) {
+        super(name, MIN_PRIORITY);
+        setDaemon(true);
+        start();
+        handler = new Handler(getLooper());
+    }
+
+    @Override
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayInMilliseconds) {
+        handler.postDelayed(task, delayInMilliseconds);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
@@ -0,0 +1,154 @@
+//
+//  HttpClientTransport.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.HostNameResolver;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.SingleClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Sends the requests with the Apache HTTP client bundled with Android.
+ * <p/>
+ * The client keeps a single connection alive between requests. Host names
+ * are resolved through a {@link DnsCache}, https connections are opened by a
+ * shared {@link TlsSocketFactory} that resumes earlier TLS sessions.
+ */
+public class HttpClientTransport implements Transport {
+    private final HttpClient     httpClient;
+    private final DnsCache       dnsCache;
+    private final ResponseReader responseReader;
+
+    protected HttpClientTransport(DnsCache dnsCache, TlsSocketFactory tlsSocketFactory) {
+        this.dnsCache = dnsCache;
+        this.responseReader = new ResponseReader();
+
+        HttpParams httpParams = new BasicHttpParams();
+
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", new PlainSocketFactory(getResolver(dnsCache)), 80));
+        schemeRegistry.register(new Scheme("https", tlsSocketFactory, 443));
+
+        httpClient = new DefaultHttpClient(new SingleClientConnManager(httpParams, schemeRegistry), httpParams);
+    }
+
+    @Override
+    public TrackingResponse send(TrackingRequest trackingRequest, int timeout) throws IOException {
+        HttpPost request = new HttpPost(trackingRequest.getUrl());
+        setTimeout(request, timeout);
+        for (Map.Entry<String, String> header : trackingRequest.getHeaders().entrySet()) {
+            request.addHeader(header.getKey(), header.getValue());
+        }
+
+        ByteArrayEntity entity = new ByteArrayEntity(trackingRequest.getBody());
+        entity.setContentType(trackingRequest.getContentType());
+        request.setEntity(entity);
+
+        try {
+            // the body of a successful request only matters if it carries data
+            HttpResponse response = httpClient.execute(request);
+            int statusCode = response.getStatusLine().getStatusCode();
+            readBody(request, response);
+            boolean bodyNeeded = statusCode != HttpStatus.SC_OK || trackingRequest.isResponseBodyNeeded();
+            String body = bodyNeeded ? responseReader.getBody() : null;
+            return new TrackingResponse(statusCode, body);
+        } catch (ClientProtocolException e) {
+            ProtocolException protocolException = new ProtocolException(e.getMessage());
+            protocolException.initCause(e);
+            throw protocolException;
+        } catch (ConnectTimeoutException e) {
+            throw getTimeoutException(e);
+        } catch (IOException e) {
+            dnsCache.clear(); // the address might be outdated
+            throw e;
+        }
+    }
+
+    @Override
+    public void connect(int timeout) throws IOException {
+        HttpHead request = new HttpHead(Constants.BASE_URL);
+        setTimeout(request, timeout);
+
+        try {
+            HttpResponse response = httpClient.execute(request);
+            readBody(request, response);
+        } catch (ConnectTimeoutException e) {
+            throw getTimeoutException(e);
+        } catch (IOException e) {
+            dnsCache.clear();
+            throw e;
+        }
+    }
+
+    // the client reports connect timeouts with its own exception, see Transport
+    private static SocketTimeoutException getTimeoutException(ConnectTimeoutException e) {
+        SocketTimeoutException timeoutException = new SocketTimeoutException(e.getMessage());
+        timeoutException.initCause(e);
+        return timeoutException;
+    }
+
+    // request parameters take precedence over the ones of the client
+    private static void setTimeout(HttpRequestBase request, int timeout) {
+        HttpConnectionParams.setConnectionTimeout(request.getParams(), timeout);
+        HttpConnectionParams.setSoTimeout(request.getParams(), timeout);
+    }
+
+    protected static HostNameResolver getResolver(final DnsCache dnsCache) {
+        return new HostNameResolver() {
+            @Override
+            public InetAddress resolve(String hostname) throws IOException {
+                return dnsCache.resolve(hostname);
+            }
+        };
+    }
+
+    // reading the whole body releases the connection for the next request,
+    // a connection with a longer body than expected gets closed instead
+    private void readBody(HttpRequestBase request, HttpResponse response) {
+        try {
+            HttpEntity entity = response.getEntity();
+            InputStream inputStream = entity != null ? entity.getContent() : null;
+            if (responseReader.read(inputStream)) {
+                if (inputStream != null) {
+                    inputStream.close();
+                }
+                return;
+            }
+            Logger.debug(String.format(Locale.US, "Response longer than %d bytes, closing connection",
+                                       ResponseReader.MAX_BODY_LENGTH));
+        } catch (IOException e) {
+            Logger.error(String.format("Failed to read response (%s)", e));
+        }
+        request.abort();
+    }
+}
@@ -0,0 +1,70 @@
+//
+//  LifecycleTracker.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-21.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+/**
+ * Tracks sessions from the activity lifecycle of the whole application, see
+ * {@link AdjustIo#trackLifecycle(Application)}. Requires API level 14.
+ * <p/>
+ * Counts the started activities and only tells the activity handler when the
+ * app comes to the foreground or goes to the background, not about every
+ * switch between two activities. A configuration change that recreates the
+ * last activity does not count as going to the background.
+ * <p/>
+ * All callbacks run on the main thread.
+ */
+class LifecycleTracker implements Application.ActivityLifecycleCallbacks {
+    private int     startedActivities;
+    private boolean foreground;
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        startedActivities++;
+        if (!foreground) {
+            foreground = true;
+            AdjustIo.foreground(activity);
+        }
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        if (startedActivities > 0) {
+            startedActivities--;
+        }
+        if (startedActivities == 0 && foreground && !activity.isChangingConfigurations()) {
+            foreground = false;
+            AdjustIo.background();
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
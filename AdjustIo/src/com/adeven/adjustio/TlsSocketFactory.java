@@ -0,0 +1,88 @@
+//
+//  TlsSocketFactory.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+
+/**
+ * Opens the https connections of the {@link HttpClientTransport}.
+ * <p/>
+ * All connections share one TLS session cache, so a new connection to the
+ * tracking server resumes the last session instead of doing a full
+ * handshake. With an {@link SSLSessionCache} the sessions are kept in the app
+ * files and survive a restart of the process. The handshakes are counted,
+ * see {@link MetricsSnapshot#getResumedTlsHandshakes()}.
+ * <p/>
+ * The handshake gets the socket timeout of the request, which the
+ * {@link TimeoutEstimator} picks for every request.
+ */
+public class TlsSocketFactory implements LayeredSocketFactory {
+    // tells the platform sockets to use the socket timeout for the handshake as well
+    private static final int HANDSHAKE_TIMEOUT_OF_SOCKET = -1;
+
+    private final PlainSocketFactory             plainSocketFactory;
+    private final javax.net.ssl.SSLSocketFactory sslSocketFactory;
+    private final X509HostnameVerifier           hostnameVerifier;
+
+    protected TlsSocketFactory(DnsCache dnsCache, SSLSessionCache sessionCache) {
+        this.plainSocketFactory = new PlainSocketFactory(HttpClientTransport.getResolver(dnsCache));
+        this.sslSocketFactory = new CountingSslSocketFactory(
+            SSLCertificateSocketFactory.getDefault(HANDSHAKE_TIMEOUT_OF_SOCKET, sessionCache));
+        this.hostnameVerifier = SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+    }
+
+    // the plain socket gets connected through the DNS cache first, TLS is layered on top
+    @Override
+    public Socket createSocket() {
+        return new Socket();
+    }
+
+    @Override
+    public Socket connectSocket(Socket socket, String host, int port, InetAddress localAddress, int localPort,
+                                HttpParams params) throws IOException {
+        Socket plainSocket = plainSocketFactory.connectSocket(socket, host, port, localAddress, localPort, params);
+        // the client sets the socket timeout only after the connection is open, the handshake needs it before
+        plainSocket.setSoTimeout(HttpConnectionParams.getSoTimeout(params));
+        return createSocket(plainSocket, host, port, true);
+    }
+
+    // layered sockets skip the host name check of the platform factory, so it is done here
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, autoClose);
+        try {
+            sslSocket.startHandshake();
+            hostnameVerifier.verify(host, sslSocket);
+        } catch (IOException e) {
+            sslSocket.close();
+            throw e;
+        }
+        return sslSocket;
+    }
+
+    @Override
+    public boolean isSecure(Socket socket) {
+        return socket instanceof SSLSocket;
+    }
+}
@@ -9,15 +9,12 @@
 
 package com.adeven.adjustio;
 
-import static com.adeven.adjustio.Constants.ENCODING;
 import static com.adeven.adjustio.Constants.HIGH;
 import static com.adeven.adjustio.Constants.LARGE;
 import static com.adeven.adjustio.Constants.LONG;
 import static com.adeven.adjustio.Constants.LOW;
-import static com.adeven.adjustio.Constants.MD5;
 import static com.adeven.adjustio.Constants.MEDIUM;
 import static com.adeven.adjustio.Constants.NORMAL;
-import static com.adeven.adjustio.Constants.SHA1;
 import static com.adeven.adjustio.Constants.SMALL;
 import static com.adeven.adjustio.Constants.UNKNOWN;
 import static com.adeven.adjustio.Constants.XLARGE;
@@ -25,8 +22,7 @@ import static com.adeven.adjustio.Constants.XLARGE;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.security.MessageDigest;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -52,10 +48,11 @@ import android.util.DisplayMetrics;
  */
 public class Util {
 	
-	protected static Map<String, String> deviceData;
+	// replaced as a whole, never modified after publication
+	protected static volatile Map<String, String> deviceData;
 
     protected static String getUserAgent(final Context context) {
-    	getDeviceData(context);
+    	final Map<String, String> deviceData = getDeviceData(context);
 
         final String[] parts = {
           deviceData.get("package_name"),
@@ -76,7 +73,7 @@ public class Util {
     }
     
     public static Map<String,String> getDeviceData(final Context context) {
-    	deviceData = new HashMap<String, String>();
+    	final Map<String, String> deviceData = new HashMap<String, String>();
 
         final Resources resources = context.getResources();
         final DisplayMetrics displayMetrics = resources.getDisplayMetrics();
@@ -98,7 +95,8 @@ public class Util {
     	deviceData.put("display_width", getDisplayWidth(displayMetrics));
     	deviceData.put("display_height", getDisplayHeight(displayMetrics));
     	
-    	return deviceData;
+    	Util.deviceData = Collections.unmodifiableMap(deviceData);
+    	return Util.deviceData;
     }
     
     public static Map<String, String> getDeviceData() {
@@ -320,30 +318,4 @@ public class Util {
             return null;
         }
     }
-
-    protected static String sha1(final String text) {
-        return hash(text, SHA1);
-    }
-
-    protected static String md5(final String text) {
-        return hash(text, MD5);
-    }
-
-    private static String hash(final String text, final String method) {
-        try {
-            final byte[] bytes = text.getBytes(ENCODING);
-            final MessageDigest mesd = MessageDigest.getInstance(method);
-            mesd.update(bytes, 0, bytes.length);
-            final byte[] hash = mesd.digest();
-            return convertToHex(hash);
-        } catch (Exception e) {
-            return "";
-        }
-    }
-
-    private static String convertToHex(final byte[] bytes) {
-        final BigInteger bigInt = new BigInteger(1, bytes);
-        final String formatString = "%0" + (bytes.length << 1) + "x";
-        return String.format(formatString, bigInt);
-    }
 }
@@ -0,0 +1,198 @@
+//
+//  EntryPointCheck.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-21.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import static com.adeven.adjustio.Constants.ONE_SECOND;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+
+/**
+ * Checks that the public entry points of {@link AdjustIo} do no work on the
+ * main thread, in the manner of StrictMode. Lives in the instrumentation test
+ * sources and is not part of the library, see doc/entry-points.md.
+ * <p/>
+ * Every entry point gets called on the main thread with a StrictMode policy
+ * that kills the process on disk or network access. The check also fails if
+ * a call starts a thread, apart from the activity handler thread on the very
+ * first call, or takes longer than a frame.
+ */
+public final class EntryPointCheck {
+    private static final long FRAME_DURATION = 16; // milliseconds
+    private static final long TIMEOUT        = 10 * ONE_SECOND;
+
+    private final Activity activity;
+    private final Handler  mainHandler;
+    private       boolean  passed;
+
+    private EntryPointCheck(Activity activity) {
+        this.activity = activity;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.passed = true;
+    }
+
+    /**
+     * Runs the check. Call this from a background thread, for example the
+     * instrumentation thread, after configuring AdjustIo in the manifest.
+     *
+     * @param activity A running activity of the app under test.
+     * @return Whether all entry points passed.
+     */
+    public static boolean run(Activity activity) throws InterruptedException {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            throw new IllegalStateException("Run the entry point check from a background thread");
+        }
+
+        EntryPointCheck check = new EntryPointCheck(activity);
+        check.runRound(true);
+
+        // let the SDK finish its initialization, afterwards no entry point may start a thread
+        try {
+            AdjustIo.flush(TIMEOUT).get(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to wait for AdjustIo (%s)", e));
+            return false;
+        }
+        check.runRound(false);
+
+        Logger.info(check.passed ? "Entry point check PASSED" : "Entry point check FAILED");
+        return check.passed;
+    }
+
+    // while the activity thread initializes it starts threads of its own, so in the first round
+    // only the call that creates it is checked for started threads
+    private void runRound(boolean cold) throws InterruptedException {
+        int allowedThreads = cold ? Integer.MAX_VALUE : 0;
+        final Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("key", "value");
+
+        callOnMainThread("onResume", cold ? 1 : 0, new Runnable() {
+            @Override
+            public void run() {
+                AdjustIo.onResume(activity);
+            }
+        });
+        callOnMainThread("trackEvent", allowedThreads, new Runnable() {
+            @Override
+            public void run() {
+                AdjustIo.trackEvent("abc123", parameters);
+            }
+        });
+        callOnMainThread("trackRevenue", allowedThreads, new Runnable() {
+            @Override
+            public void run() {
+                AdjustIo.trackRevenue(1.5, "abc123", parameters);
+            }
+        });
+        callOnMainThread("getMetrics", allowedThreads, new Runnable() {
+            @Override
+            public void run() {
+                AdjustIo.getMetrics();
+            }
+        });
+        callOnMainThread("getAttribution", allowedThreads, new Runnable() {
+            @Override
+            public void run() {
+                AdjustIo.getAttribution();
+            }
+        });
+        callOnMainThread("flush", allowedThreads, new Runnable() {
+            @Override
+            public void run() {
+                AdjustIo.flush(TIMEOUT);
+            }
+        });
+        callOnMainThread("onPause", allowedThreads, new Runnable() {
+            @Override
+            public void run() {
+                AdjustIo.onPause();
+            }
+        });
+    }
+
+    private void callOnMainThread(final String name, final int allowedThreads, final Runnable entryPoint)
+            throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    call(name, allowedThreads, entryPoint);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        if (!latch.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+            fail(name, "main thread did not respond");
+        }
+    }
+
+    // runs on the main thread
+    private void call(String name, int allowedThreads, Runnable entryPoint) {
+        int threadsBefore = Thread.getAllStackTraces().size();
+        StrictMode.ThreadPolicy oldPolicy = enterStrictMode();
+        long startedAt = System.nanoTime();
+
+        try {
+            entryPoint.run();
+        } finally {
+            long duration = System.nanoTime() - startedAt;
+            leaveStrictMode(oldPolicy);
+            int startedThreads = Thread.getAllStackTraces().size() - threadsBefore;
+            double milliseconds = duration / 1000000.0;
+
+            if (startedThreads > allowedThreads) {
+                fail(name, String.format(Locale.US, "started %d threads", startedThreads));
+            } else if (milliseconds > FRAME_DURATION) {
+                fail(name, String.format(Locale.US, "took %.2f ms", milliseconds));
+            } else {
+                Logger.info(String.format(Locale.US, "Entry point %s took %.3f ms", name, milliseconds));
+            }
+        }
+    }
+
+    private void fail(String name, String reason) {
+        passed = false;
+        Logger.error(String.format("Entry point %s %s on the calling thread", name, reason));
+    }
+
+    // StrictMode exists since API level 9, older devices only get the thread and time checks
+    private static StrictMode.ThreadPolicy enterStrictMode() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
+            return null;
+        }
+
+        StrictMode.ThreadPolicy oldPolicy = StrictMode.getThreadPolicy();
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                                       .detectDiskReads()
+                                       .detectDiskWrites()
+                                       .detectNetwork()
+                                       .penaltyLog()
+                                       .penaltyDeath()
+                                       .build());
+        return oldPolicy;
+    }
+
+    private static void leaveStrictMode(StrictMode.ThreadPolicy oldPolicy) {
+        if (oldPolicy != null) {
+            StrictMode.setThreadPolicy(oldPolicy);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+//
+//  ActivityStateBenchmark.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-13.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// the read and write paths of the activity state, without the file system
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ActivityStateBenchmark {
+    private ActivityState         activityState;
+    private byte[]                stateBytes;
+    private ByteArrayOutputStream outputStream;
+
+    @Setup
+    public void setUp() throws IOException {
+        activityState = BenchmarkFixtures.activityState();
+        outputStream = new ByteArrayOutputStream();
+        writeActivityState();
+        stateBytes = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int writeActivityState() throws IOException {
+        outputStream.reset();
+        ActivityStateStore.writeActivityState(activityState, outputStream);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public ActivityState readActivityState() throws IOException, ClassNotFoundException {
+        return ActivityStateStore.readActivityState(new ByteArrayInputStream(stateBytes));
+    }
+
+    @Benchmark
+    public String activityStateToString() {
+        return activityState.toString();
+    }
+}
@@ -0,0 +1,228 @@
+//
+//  AllocationGate.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-18.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bytes allocated per tracked event on the activity thread and
+ * per request on the request threads and fails if either exceeds its budget.
+ * <p/>
+ * Every step runs on the thread it runs on in the SDK, so the per thread
+ * allocation counters of the JVM separate trackEventInternal from
+ * sendInternal. The transport answers every request with 200 right away, so
+ * the request numbers contain nothing of the HTTP client. The flush that
+ * waits for the requests sends on up to four request threads, their bytes
+ * are added up.
+ * <p/>
+ * Usage: AllocationGate [budget file], see doc/benchmarks.md.
+ */
+public class AllocationGate {
+    private static final String DEFAULT_BUDGET_FILE = "allocation-budgets.properties";
+    private static final int    WARMUP_ROUNDS       = 50;
+    private static final int    MEASURED_ROUNDS     = 5;
+    private static final int    EVENTS_PER_ROUND    = 200;
+    private static final long   ROUND_TIMEOUT       = Constants.ONE_MINUTE;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    private Platform           platform;
+    private Scheduler          activityScheduler;
+    private SessionEngine      sessionEngine;
+    private ActivityStateStore activityStateStore;
+    private PackageHandler     packageHandler;
+    private AttributeSet       attributeSet;
+    private Map<String, String> callbackParameters;
+
+    private volatile long activityThreadId;
+    private final    Set<Long> requestThreadIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    public static void main(String[] args) throws Exception {
+        String budgetFile = args.length > 0 ? args[0] : DEFAULT_BUDGET_FILE;
+        Properties budgets = readBudgets(budgetFile);
+        Logger.setLogLevelString("assert");
+
+        AllocationGate gate = new AllocationGate();
+        gate.setUp();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            gate.runRound();
+        }
+
+        long trackEventBytes = Long.MAX_VALUE;
+        long sendBytes = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long[] round = gate.runRound();
+            trackEventBytes = Math.min(trackEventBytes, round[0]);
+            sendBytes = Math.min(sendBytes, round[1]);
+        }
+
+        boolean passed = check("trackEventInternal", trackEventBytes, budgets);
+        passed &= check("sendInternal", sendBytes, budgets);
+        System.exit(passed ? 0 : 1);
+    }
+
+    private AllocationGate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new UnsupportedOperationException("This JVM does not count allocated bytes per thread");
+        }
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private void setUp() throws Exception {
+        platform = new JvmPlatform(new MemoryStorage(), Clock.SYSTEM, null) {
+            @Override
+            public Transport newTransport() {
+                return new Transport() {
+                    @Override
+                    public TrackingResponse send(TrackingRequest request, int timeout) {
+                        requestThreadIds.add(Thread.currentThread().getId());
+                        return new TrackingResponse(200, "{}");
+                    }
+
+                    @Override
+                    public void connect(int timeout) {
+                    }
+                };
+            }
+        };
+        activityScheduler = platform.newScheduler("activity");
+        sessionEngine = new SessionEngine(platform.getClock());
+        activityStateStore = new ActivityStateStore(platform.getStorage());
+        attributeSet = BenchmarkFixtures.attributeSet();
+        callbackParameters = BenchmarkFixtures.callbackParameters();
+        packageHandler = new PackageHandler(platform, FlushPolicy.getDefault());
+
+        activityScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                activityThreadId = Thread.currentThread().getId();
+                packageHandler.resumeSending();
+                PackageBuilder sessionBuilder = sessionEngine.startSubsession();
+                sessionBuilder.setPackageId(Tracing.nextPackageId());
+                sessionBuilder.setAttributeSet(attributeSet);
+                packageHandler.addPackage(sessionBuilder.buildSessionPackage());
+                packageHandler.sendFirstPackage();
+            }
+        });
+        waitForActivities();
+        waitForRequests();
+    }
+
+    // tracks a round of events and returns the bytes per event on both threads
+    private long[] runRound() throws Exception {
+        long activityBytes = threadBean.getThreadAllocatedBytes(activityThreadId);
+        Map<Long, Long> requestBytesBefore = new HashMap<Long, Long>();
+        for (long requestThreadId : requestThreadIds) {
+            requestBytesBefore.put(requestThreadId, threadBean.getThreadAllocatedBytes(requestThreadId));
+        }
+
+        for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+            // the builder is created on the calling thread, as in ActivityHandler.trackEvent
+            final PackageBuilder eventBuilder = new PackageBuilder();
+            eventBuilder.setPackageId(Tracing.nextPackageId());
+            eventBuilder.setEventToken("abc123");
+            eventBuilder.setCallbackParameters(callbackParameters);
+            activityScheduler.post(new Runnable() {
+                @Override
+                public void run() {
+                    trackEventInternal(eventBuilder);
+                }
+            });
+        }
+        waitForActivities();
+        waitForRequests();
+
+        activityBytes = threadBean.getThreadAllocatedBytes(activityThreadId) - activityBytes;
+        // a request thread started during the round counts from its start
+        long requestBytes = 0;
+        for (long requestThreadId : requestThreadIds) {
+            Long bytesBefore = requestBytesBefore.get(requestThreadId);
+            requestBytes += threadBean.getThreadAllocatedBytes(requestThreadId) - (null == bytesBefore ? 0 : bytesBefore);
+        }
+        return new long[] { activityBytes / EVENTS_PER_ROUND, requestBytes / EVENTS_PER_ROUND };
+    }
+
+    // the same steps as ActivityHandler.trackEventInternal without event buffering
+    private void trackEventInternal(PackageBuilder eventBuilder) {
+        if (!sessionEngine.hasActivityState() || !eventBuilder.isValidForEvent()) {
+            return;
+        }
+
+        eventBuilder.setAttributeSet(attributeSet);
+        sessionEngine.trackEvent(eventBuilder);
+        ActivityPackage eventPackage = eventBuilder.buildEventPackage();
+        packageHandler.addPackage(eventPackage);
+        packageHandler.sendFirstPackage();
+
+        activityStateStore.write(sessionEngine.getActivityState());
+        Logger.debug(String.format(Locale.US, "Event %d", sessionEngine.getActivityState().eventCount));
+    }
+
+    private void waitForActivities() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        activityScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        if (!latch.await(ROUND_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Activity thread did not finish in time");
+        }
+    }
+
+    private void waitForRequests() throws Exception {
+        FlushRequest flushRequest = new FlushRequest(ROUND_TIMEOUT, null);
+        packageHandler.flushPackages(flushRequest);
+        FlushResult flushResult = flushRequest.get();
+        if (flushResult.isTimedOut() || flushResult.getRemainingCount() > 0) {
+            throw new IllegalStateException(String.format("Requests did not finish in time (%s)", flushResult));
+        }
+    }
+
+    private static boolean check(String name, long bytes, Properties budgets) {
+        String budgetString = budgets.getProperty(name);
+        if (budgetString == null) {
+            System.out.println(String.format(Locale.US, "%-20s %6d bytes (no budget)", name, bytes));
+            return false;
+        }
+
+        long budget = Long.parseLong(budgetString.trim());
+        boolean passed = bytes <= budget;
+        System.out.println(String.format(Locale.US, "%-20s %6d bytes, budget %6d bytes %s",
+                                         name, bytes, budget, passed ? "OK" : "EXCEEDED"));
+        return passed;
+    }
+
+    private static Properties readBudgets(String budgetFile) throws IOException {
+        Properties budgets = new Properties();
+        InputStream inputStream = new FileInputStream(budgetFile);
+        try {
+            budgets.load(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        return budgets;
+    }
+}
@@ -0,0 +1,97 @@
+//
+//  BenchmarkFixtures.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-13.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// realistic inputs for the benchmarks, built without an android context
+public class BenchmarkFixtures {
+    protected static final String MAC_ADDRESS = "00:1A:2B:3C:4D:5E";
+    protected static final String USER_AGENT  =
+        "com.example.app 1.2.3 phone GT-I9300 android 16 en DE normal long high 720 1280";
+
+    protected static AttributeSet attributeSet() {
+        PackageBuilder builder = new PackageBuilder();
+        builder.setAppToken("qwerty123456");
+        builder.setMacSha1(Encoding.sha1(MAC_ADDRESS));
+        builder.setMacShortMd5(Encoding.md5(MAC_ADDRESS.replaceAll(":", "")));
+        builder.setAndroidId("9774d56d682e549c");
+        builder.setFbAttributionId("a1b2c3d4-e5f6-7890-abcd-ef1234567890");
+        builder.setUserAgent(USER_AGENT);
+        builder.setClientSdk(Constants.CLIENT_SDK);
+        builder.setEnvironment("production");
+        return builder.buildAttributeSet();
+    }
+
+    protected static ActivityState activityState() {
+        ActivityState activityState = new ActivityState();
+        activityState.eventCount = 1234;
+        activityState.sessionCount = 56;
+        activityState.resetSessionAttributes(System.currentTimeMillis());
+        activityState.subsessionCount = 3;
+        activityState.sessionLength = 123456;
+        activityState.timeSpent = 98765;
+        activityState.createdAt = System.currentTimeMillis();
+        return activityState;
+    }
+
+    protected static Map<String, String> callbackParameters() {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("level", "12");
+        parameters.put("item", "sword_of_benchmarking");
+        return parameters;
+    }
+
+    protected static Map<String, String> deviceData() {
+        Map<String, String> deviceData = new HashMap<String, String>();
+        deviceData.put("package_name", "com.example.app");
+        deviceData.put("app_version", "1.2.3");
+        deviceData.put("device_type", "phone");
+        deviceData.put("device_name", "GT-I9300");
+        deviceData.put("os_name", "android");
+        deviceData.put("os_version", "16");
+        deviceData.put("language", "en");
+        deviceData.put("country", "DE");
+        deviceData.put("screen_size", "normal");
+        deviceData.put("screen_format", "long");
+        deviceData.put("screen_density", "high");
+        deviceData.put("display_width", "720");
+        deviceData.put("display_height", "1280");
+        return deviceData;
+    }
+
+    protected static ActivityPackage eventPackage(AttributeSet attributeSet, ActivityState activityState) {
+        PackageBuilder builder = new PackageBuilder();
+        builder.setAttributeSet(attributeSet);
+        builder.setEventToken("abc123");
+        builder.setCallbackParameters(callbackParameters());
+        activityState.injectEventAttributes(builder);
+        return builder.buildEventPackage();
+    }
+
+    // with sharedAttributes false every package gets its own copy, like before attribute sets
+    protected static List<ActivityPackage> packageQueue(int size, boolean sharedAttributes) {
+        AttributeSet attributeSet = attributeSet();
+        ActivityState activityState = activityState();
+
+        List<ActivityPackage> packageQueue = new ArrayList<ActivityPackage>(size);
+        for (int index = 0; index < size; index++) {
+            activityState.eventCount++;
+            AttributeSet packageAttributes = sharedAttributes ? attributeSet : attributeSet();
+            ActivityPackage activityPackage = eventPackage(packageAttributes, activityState);
+            activityPackage.setQueuedAt(System.currentTimeMillis());
+            packageQueue.add(activityPackage);
+        }
+        return packageQueue;
+    }
+}
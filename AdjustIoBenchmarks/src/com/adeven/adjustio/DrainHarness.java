@@ -0,0 +1,139 @@
+//
+//  DrainHarness.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures how long the package handler takes to drain a large queue, like
+ * the one left after a long time offline.
+ * <p/>
+ * The queue file is prepared with the given number of packages, then a new
+ * package handler reads it and flushes it to a local stub server. Run it once
+ * with the catch-up mode and once with catch-up-threshold=0 to compare.
+ * <p/>
+ * Options are passed as key=value, see doc/benchmarks.md.
+ */
+public class DrainHarness {
+    private final int  packageCount;
+    private final long latency;      // all durations in milliseconds
+    private final int  catchUpThreshold;
+    private final long bandwidth;    // bytes per second
+    private final long drainTimeout;
+    private final File directory;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Logger.setLogLevelString(getString(options, "log", "assert"));
+
+        DrainHarness harness = new DrainHarness(options);
+        boolean drained = harness.run();
+        System.exit(drained ? 0 : 1);
+    }
+
+    private DrainHarness(Map<String, String> options) throws IOException {
+        packageCount = (int) getDouble(options, "packages", 10000);
+        latency = (long) getDouble(options, "latency", 0);
+        catchUpThreshold = (int) getDouble(options, "catch-up-threshold", FlushPolicy.DEFAULT_CATCH_UP_THRESHOLD);
+        bandwidth = (long) getDouble(options, "bandwidth", 0);
+        drainTimeout = (long) (getDouble(options, "drain", 3600) * Constants.ONE_SECOND);
+        directory = getDirectory(getString(options, "directory", null));
+    }
+
+    private boolean run() throws Exception {
+        Storage storage = new FileStorage(directory);
+        prepareQueue(storage);
+
+        StubTrackingServer server = new StubTrackingServer(latency, 0, 0, 0, 0, 0, null);
+        server.start();
+        try {
+            FlushPolicy flushPolicy = FlushPolicy.getDefault();
+            flushPolicy.setCatchUpThreshold(catchUpThreshold);
+            flushPolicy.setCatchUpBandwidth(bandwidth);
+            System.out.println(String.format(Locale.US, "Draining %d packages from %s (%s)",
+                                             packageCount, directory, flushPolicy));
+
+            MetricsSnapshot before = Metrics.snapshot();
+            long startedAt = System.nanoTime();
+            Platform platform = new JvmPlatform(storage, Clock.SYSTEM, server.getBaseUrl());
+            PackageHandler packageHandler = new PackageHandler(platform, flushPolicy);
+            FlushRequest flushRequest = new FlushRequest(drainTimeout, null);
+            packageHandler.flushPackages(flushRequest);
+            FlushResult result = flushRequest.get();
+            long duration = System.nanoTime() - startedAt;
+            MetricsSnapshot after = Metrics.snapshot();
+
+            PackageQueue packageQueue = new PackageQueue(storage);
+            packageQueue.read();
+
+            double seconds = duration / 1000000000.0;
+            System.out.println();
+            System.out.println(String.format(Locale.US, "drain time          %.1f s, %.0f packages/s",
+                                             seconds, result.getDeliveredCount() / seconds));
+            System.out.println(String.format(Locale.US, "flush result        %s", result));
+            System.out.println(String.format(Locale.US, "requests            %d sent, %d accepted",
+                                             server.getRequests(), server.getAcceptedRequests()));
+            System.out.println(String.format(Locale.US, "bytes written       %.1f MB queue files",
+                                             (after.getPackageQueueBytesWritten() - before.getPackageQueueBytesWritten()) / 1048576.0));
+            System.out.println(String.format(Locale.US, "queue file          %d packages left", packageQueue.size()));
+            return !result.isTimedOut() && packageQueue.isEmpty();
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void prepareQueue(Storage storage) {
+        List<ActivityPackage> packages = BenchmarkFixtures.packageQueue(packageCount, true);
+        PackageQueue packageQueue = new PackageQueue(storage);
+        for (ActivityPackage activityPackage : packages) {
+            packageQueue.add(activityPackage);
+        }
+        packageQueue.write();
+    }
+
+    private static File getDirectory(String directoryName) throws IOException {
+        if (directoryName != null) {
+            return new File(directoryName);
+        }
+
+        File directory = File.createTempFile("adjustio-drain", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Failed to create temporary directory");
+        }
+        return directory;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Malformed option '%s', use key=value", arg));
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String getString(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static double getDouble(Map<String, String> options, String key, double defaultValue) {
+        String value = options.get(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
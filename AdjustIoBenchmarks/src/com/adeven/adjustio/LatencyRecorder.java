@@ -0,0 +1,95 @@
+//
+//  LatencyRecorder.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-15.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Locale;
+
+/**
+ * Records latencies in milliseconds with three significant digits in constant memory.
+ * <p/>
+ * Values below one second get their own bucket, above that each power of ten
+ * is split into 900 buckets. Thread safe.
+ */
+public class LatencyRecorder {
+    private static final int EXACT   = 1000;
+    private static final int DECADES = 7; // up to 10^10 ms
+
+    private final long[] counts = new long[EXACT + 900 * DECADES];
+    private       long   count;
+    private       long   max;
+
+    public synchronized void record(long latency) {
+        latency = Math.max(0, latency);
+        counts[getBucket(latency)]++;
+        count++;
+        max = Math.max(max, latency);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    // upper bound of the bucket that contains the percentile, 0 without values
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile / 100.0 * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(max, getUpperBound(bucket));
+            }
+        }
+        return max;
+    }
+
+    public String toString() {
+        return String.format(Locale.US,
+                             "n:%d p50:%d p90:%d p99:%d p99.9:%d max:%d ms",
+                             getCount(), getPercentile(50), getPercentile(90),
+                             getPercentile(99), getPercentile(99.9), getMax());
+    }
+
+    private static int getBucket(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+
+        int decade = 0;
+        long scale = 10;
+        while (value / scale >= 1000 && decade < DECADES - 1) {
+            decade++;
+            scale *= 10;
+        }
+        int digits = (int) Math.min(999, value / scale); // 100..999
+        return EXACT + 900 * decade + digits - 100;
+    }
+
+    private static long getUpperBound(int bucket) {
+        if (bucket < EXACT) {
+            return bucket;
+        }
+
+        int decade = (bucket - EXACT) / 900;
+        int digits = 100 + (bucket - EXACT) % 900;
+        long scale = 10;
+        for (int i = 0; i < decade; i++) {
+            scale *= 10;
+        }
+        return (digits + 1) * scale - 1;
+    }
+}
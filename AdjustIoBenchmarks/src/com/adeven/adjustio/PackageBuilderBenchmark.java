@@ -0,0 +1,72 @@
+//
+//  PackageBuilderBenchmark.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-13.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PackageBuilderBenchmark {
+    private AttributeSet        attributeSet;
+    private ActivityState       activityState;
+    private Map<String, String> callbackParameters;
+
+    @Setup
+    public void setUp() {
+        attributeSet = BenchmarkFixtures.attributeSet();
+        activityState = BenchmarkFixtures.activityState();
+        callbackParameters = BenchmarkFixtures.callbackParameters();
+    }
+
+    @Benchmark
+    public ActivityPackage buildEventPackage() {
+        PackageBuilder builder = new PackageBuilder();
+        builder.setAttributeSet(attributeSet);
+        builder.setEventToken("abc123");
+        builder.setCallbackParameters(callbackParameters);
+        activityState.injectEventAttributes(builder);
+        return builder.buildEventPackage();
+    }
+
+    @Benchmark
+    public ActivityPackage buildRevenuePackage() {
+        PackageBuilder builder = new PackageBuilder();
+        builder.setAttributeSet(attributeSet);
+        builder.setAmountInCents(12.5);
+        builder.setEventToken("abc123");
+        activityState.injectEventAttributes(builder);
+        return builder.buildRevenuePackage();
+    }
+
+    @Benchmark
+    public ActivityPackage buildSessionPackage() {
+        PackageBuilder builder = new PackageBuilder();
+        builder.setAttributeSet(attributeSet);
+        builder.setReferrer("utm_source=benchmark");
+        activityState.injectSessionAttributes(builder);
+        return builder.buildSessionPackage();
+    }
+}
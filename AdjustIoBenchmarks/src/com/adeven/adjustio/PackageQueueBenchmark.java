@@ -0,0 +1,68 @@
+//
+//  PackageQueueBenchmark.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-13.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// the read and write paths of the package queue, without the file system
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PackageQueueBenchmark {
+    @Param({"1", "100", "1000"})
+    private int queueSize;
+
+    @Param({"true", "false"})
+    private boolean sharedAttributes;
+
+    private List<ActivityPackage> packageQueue;
+    private byte[]                queueBytes;
+    private ByteArrayOutputStream outputStream;
+
+    @Setup
+    public void setUp() throws IOException {
+        packageQueue = BenchmarkFixtures.packageQueue(queueSize, sharedAttributes);
+
+        outputStream = new ByteArrayOutputStream();
+        PackageQueue.writePackages(packageQueue, outputStream);
+        queueBytes = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public int writePackageQueue() throws IOException {
+        outputStream.reset();
+        PackageQueue.writePackages(packageQueue, outputStream);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public List<ActivityPackage> readPackageQueue() throws IOException, ClassNotFoundException {
+        return PackageQueue.readPackages(new ByteArrayInputStream(queueBytes));
+    }
+}
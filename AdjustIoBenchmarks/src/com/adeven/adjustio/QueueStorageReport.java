@@ -0,0 +1,37 @@
+//
+//  QueueStorageReport.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-13.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+// prints the size of the queue file with and without shared attribute sets
+public class QueueStorageReport {
+    private static final int[] QUEUE_SIZES = {1, 10, 100, 1000, 10000};
+
+    public static void main(String[] args) throws IOException {
+        System.out.println("packages   shared bytes   copied bytes   shared/package   copied/package");
+        for (int queueSize : QUEUE_SIZES) {
+            long sharedBytes = getQueueBytes(queueSize, true);
+            long copiedBytes = getQueueBytes(queueSize, false);
+            System.out.println(String.format(Locale.US,
+                                             "%8d %15d %14d %16d %16d",
+                                             queueSize, sharedBytes, copiedBytes,
+                                             sharedBytes / queueSize, copiedBytes / queueSize));
+        }
+    }
+
+    private static long getQueueBytes(int queueSize, boolean sharedAttributes) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        PackageQueue.writePackages(BenchmarkFixtures.packageQueue(queueSize, sharedAttributes), outputStream);
+        return outputStream.size();
+    }
+}
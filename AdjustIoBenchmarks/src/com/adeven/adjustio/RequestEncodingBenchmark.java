@@ -0,0 +1,48 @@
+//
+//  RequestEncodingBenchmark.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-13.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// encoding the POST request of a package, done by the request handler before each send
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RequestEncodingBenchmark {
+    private ActivityPackage     activityPackage;
+    private Map<String, String> deviceData;
+
+    @Setup
+    public void setUp() {
+        deviceData = BenchmarkFixtures.deviceData();
+        activityPackage = BenchmarkFixtures.eventPackage(BenchmarkFixtures.attributeSet(), BenchmarkFixtures.activityState());
+    }
+
+    @Benchmark
+    public TrackingRequest encodeRequest() throws UnsupportedEncodingException {
+        return RequestEncoder.getRequest(activityPackage, deviceData);
+    }
+}
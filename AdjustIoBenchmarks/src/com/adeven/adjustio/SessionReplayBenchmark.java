@@ -0,0 +1,49 @@
+//
+//  SessionReplayBenchmark.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-20.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// replaying recorded session transitions, the score is per transition
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SessionReplayBenchmark {
+    private static final int TRANSITIONS = 100000;
+
+    private SessionTrace trace;
+
+    @Setup
+    public void setUp() {
+        Logger.setLogLevel(Logger.LogLevel.ASSERT);
+        trace = new SessionTraceGenerator(42).record(TRANSITIONS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSITIONS)
+    public ActivityState replay() {
+        return new SessionReplay(null).replay(trace);
+    }
+}
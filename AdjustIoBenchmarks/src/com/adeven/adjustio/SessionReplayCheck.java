@@ -0,0 +1,61 @@
+//
+//  SessionReplayCheck.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-20.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Locale;
+
+/**
+ * Records a simulated user through the live session engine, writes the trace
+ * as text and reads it back, replays it and checks that the replay ends in
+ * the same activity state. Then prints how fast the replay runs.
+ * <p/>
+ * Usage: SessionReplayCheck [transitions] [seed]
+ */
+public class SessionReplayCheck {
+    private static final int REPLAY_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int transitionCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        Logger.setLogLevel(Logger.LogLevel.ASSERT);
+
+        SessionTraceGenerator generator = new SessionTraceGenerator(seed);
+        SessionTrace recordedTrace = generator.record(transitionCount);
+        ActivityState liveState = generator.getActivityState();
+
+        StringWriter writer = new StringWriter();
+        recordedTrace.write(writer);
+        SessionTrace trace = SessionTrace.read(new StringReader(writer.toString()));
+
+        SessionReplay replay = new SessionReplay(null);
+        ActivityState replayedState = replay.replay(trace);
+
+        System.out.println(String.format(Locale.US, "seed                %d", seed));
+        System.out.println(String.format(Locale.US, "transitions         %d (%d sessions)",
+                                         trace.size(), replay.getSessionCount()));
+        System.out.println(String.format(Locale.US, "live state          %s", liveState));
+        System.out.println(String.format(Locale.US, "replayed state      %s", replayedState));
+
+        long fastest = Long.MAX_VALUE;
+        for (int round = 0; round < REPLAY_ROUNDS; round++) {
+            long startedAt = System.nanoTime();
+            new SessionReplay(null).replay(trace);
+            fastest = Math.min(fastest, System.nanoTime() - startedAt);
+        }
+        System.out.println(String.format(Locale.US, "replay              %.1f million transitions per second",
+                                         trace.size() * 1000.0 / fastest));
+
+        boolean passed = liveState.equals(replayedState);
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+}
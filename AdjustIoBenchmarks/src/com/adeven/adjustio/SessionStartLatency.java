@@ -0,0 +1,125 @@
+//
+//  SessionStartLatency.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-21.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures the time from a session start until the server acknowledged the
+ * session package, with and without connecting ahead of time.
+ * <p/>
+ * Every round starts a new stub server, so no connection is left from an
+ * earlier round. The server delays the first request of every connection to
+ * stand in for DNS and the handshakes. The activity thread work before the
+ * session package is ready, mostly waiting for the device identifiers during
+ * startup, is simulated with a sleep.
+ * <p/>
+ * Options are passed as key=value, see doc/benchmarks.md.
+ */
+public class SessionStartLatency {
+    private static final long FLUSH_TIMEOUT = Constants.ONE_MINUTE;
+
+    private final int  rounds;
+    private final long handshakeDelay; // all durations in milliseconds
+    private final long latency;
+    private final long work;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Logger.setLogLevelString(getString(options, "log", "assert"));
+
+        SessionStartLatency benchmark = new SessionStartLatency(options);
+        benchmark.run();
+        System.exit(0);
+    }
+
+    private SessionStartLatency(Map<String, String> options) {
+        rounds = (int) getDouble(options, "rounds", 20);
+        handshakeDelay = (long) getDouble(options, "handshake", 100);
+        latency = (long) getDouble(options, "latency", 20);
+        work = (long) getDouble(options, "work", 50);
+    }
+
+    private void run() throws Exception {
+        System.out.println(String.format(Locale.US, "%d rounds, handshake %d ms, latency %d ms, work %d ms",
+                                         rounds, handshakeDelay, latency, work));
+
+        LatencyRecorder coldLatency = new LatencyRecorder();
+        LatencyRecorder connectedLatency = new LatencyRecorder();
+        runRound(false); // warm up the JVM
+        for (int round = 0; round < rounds; round++) {
+            coldLatency.record(runRound(false));
+            connectedLatency.record(runRound(true));
+        }
+
+        System.out.println(String.format(Locale.US, "without connect     %s", coldLatency));
+        System.out.println(String.format(Locale.US, "with connect        %s", connectedLatency));
+    }
+
+    // the same steps as ActivityHandler.startInternal, returns the delivery latency
+    private long runRound(boolean connect) throws Exception {
+        StubTrackingServer server = new StubTrackingServer(latency, 0, 0, 0, 0, 0, null);
+        server.setHandshakeDelay(handshakeDelay);
+        server.start();
+
+        try {
+            Platform platform = new JvmPlatform(new MemoryStorage(), Clock.SYSTEM, server.getBaseUrl());
+            PackageHandler packageHandler = new PackageHandler(platform, FlushPolicy.getDefault());
+            SessionEngine sessionEngine = new SessionEngine(platform.getClock());
+
+            long startedAt = System.currentTimeMillis();
+            if (connect) {
+                packageHandler.connect();
+            }
+            packageHandler.resumeSending();
+
+            Thread.sleep(work);
+            PackageBuilder sessionBuilder = sessionEngine.startSubsession();
+            sessionBuilder.setPackageId(Tracing.nextPackageId());
+            sessionBuilder.setAttributeSet(BenchmarkFixtures.attributeSet());
+            packageHandler.addPackage(sessionBuilder.buildSessionPackage());
+            packageHandler.sendFirstPackage();
+
+            FlushRequest flushRequest = new FlushRequest(FLUSH_TIMEOUT, null);
+            packageHandler.flushPackages(flushRequest);
+            FlushResult flushResult = flushRequest.get();
+            if (server.getAcceptedRequests() == 0) {
+                throw new IllegalStateException(String.format("Session package was not delivered (%s)", flushResult));
+            }
+            return System.currentTimeMillis() - startedAt;
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Malformed option '%s', use key=value", arg));
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String getString(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static double getDouble(Map<String, String> options, String key, double defaultValue) {
+        String value = options.get(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
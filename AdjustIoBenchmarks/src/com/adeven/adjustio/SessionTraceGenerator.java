@@ -0,0 +1,95 @@
+//
+//  SessionTraceGenerator.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-20.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Random;
+
+/**
+ * Records a session trace of a simulated user through the live session engine:
+ * the engine gets called the way ActivityHandler calls it, on resume, on
+ * every timer tick, for every event and on pause, while the clock advances
+ * in random steps between a second and a few hours.
+ */
+public class SessionTraceGenerator implements Clock {
+    private static final long TIMER_INTERVAL = Constants.ONE_MINUTE;
+
+    private final Random         random;
+    private final SessionEngine  sessionEngine;
+    private final PackageBuilder eventBuilder;
+    private       long           now;
+
+    protected SessionTraceGenerator(long seed) {
+        random = new Random(seed);
+        sessionEngine = new SessionEngine(this);
+        eventBuilder = new PackageBuilder();
+        now = 1384948800000L;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    // the recorded trace; the state the live engine ended in is getActivityState()
+    protected SessionTrace record(int transitionCount) {
+        SessionTrace trace = new SessionTrace(transitionCount);
+        sessionEngine.setTrace(trace);
+
+        while (trace.size() < transitionCount) {
+            foreground(trace, transitionCount);
+            now += backgroundTime();
+        }
+
+        sessionEngine.setTrace(null);
+        return trace;
+    }
+
+    protected ActivityState getActivityState() {
+        return sessionEngine.getActivityState();
+    }
+
+    // one stay in an activity, from resume to pause
+    private void foreground(SessionTrace trace, int transitionCount) {
+        sessionEngine.startSubsession();
+
+        long pauseAt = now + 1000 + (long) (random.nextDouble() * 10 * Constants.ONE_MINUTE);
+        long nextTimer = now + TIMER_INTERVAL;
+        while (trace.size() < transitionCount - 1) {
+            long nextEvent = now + 200 + random.nextInt(30000);
+            if (nextEvent >= pauseAt && nextTimer >= pauseAt) {
+                break;
+            }
+
+            if (nextTimer < nextEvent) {
+                now = nextTimer;
+                nextTimer += TIMER_INTERVAL;
+                sessionEngine.update();
+            } else {
+                now = nextEvent;
+                sessionEngine.trackEvent(eventBuilder);
+            }
+        }
+
+        now = Math.max(now, pauseAt);
+        sessionEngine.update();
+    }
+
+    // mostly activity switches and short breaks, sometimes hours
+    private long backgroundTime() {
+        int kind = random.nextInt(10);
+        if (kind < 5) {
+            return 100 + random.nextInt(2000);
+        } else if (kind < 8) {
+            return Constants.ONE_SECOND + random.nextInt(60000);
+        } else {
+            return Constants.ONE_MINUTE + (long) (random.nextDouble() * 6 * 60 * Constants.ONE_MINUTE);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+//
+//  SoakHarness.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-15.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the tracking pipeline of the core at a fixed event rate against a
+ * {@link StubTrackingServer} and reports throughput, delivery latency, heap,
+ * bytes written and data loss.
+ * <p/>
+ * The activity side does what ActivityHandler does for each event: count it
+ * in the session engine, build the package, queue it and write the activity
+ * state, all on its own thread.
+ * <p/>
+ * Options are passed as key=value, see doc/benchmarks.md.
+ */
+public class SoakHarness implements StubTrackingServer.Listener {
+    private static final int  MAX_PENDING_ACTIVITIES = 1000; // as in ActivityHandler
+    private static final long TIMER_INTERVAL         = Constants.ONE_MINUTE;
+    private static final long HEAP_SAMPLE_INTERVAL   = 100;
+
+    private final double rate;            // events per second
+    private final long   duration;        // all durations in milliseconds
+    private final long   drainTimeout;
+    private final File   directory;
+
+    private final StubTrackingServer server;
+    private final LatencyRecorder    deliveryLatency;
+    private final Map<Integer, Long> trackedAt;
+    private final AtomicInteger      pendingActivities;
+    private final AtomicLong         droppedActivities;
+    private final AtomicLong         peakHeap;
+
+    private Platform           platform;
+    private Scheduler          activityScheduler;
+    private SessionEngine      sessionEngine;
+    private ActivityStateStore activityStateStore;
+    private PackageHandler     packageHandler;
+    private AttributionCache   attributionCache;
+    private AttributeSet       attributeSet;
+    private long               trackedEvents;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Logger.setLogLevelString(getString(options, "log", "assert"));
+
+        SoakHarness harness = new SoakHarness(options);
+        harness.run();
+        System.exit(0);
+    }
+
+    private SoakHarness(Map<String, String> options) throws IOException {
+        rate = getDouble(options, "rate", 100);
+        duration = (long) (getDouble(options, "duration", 60) * Constants.ONE_SECOND);
+        drainTimeout = (long) (getDouble(options, "drain", 120) * Constants.ONE_SECOND);
+        directory = getDirectory(getString(options, "directory", null));
+
+        server = new StubTrackingServer(
+            (long) getDouble(options, "latency", 20),
+            (long) getDouble(options, "jitter", 10),
+            getDouble(options, "errors", 0),
+            getDouble(options, "disconnects", 0),
+            (long) (getDouble(options, "outage-every", 0) * Constants.ONE_SECOND),
+            (long) (getDouble(options, "outage-length", 0) * Constants.ONE_SECOND),
+            this);
+        server.setStallRate(getDouble(options, "stalls", 0));
+        server.setLostResponseRate(getDouble(options, "lost-responses", 0));
+        server.setOutageStatus((int) getDouble(options, "outage-status", 0));
+        server.setAttributionResponse("{\"tracker_token\":\"soak01\",\"tracker_name\":\"Soak\",\"network\":\"Organic\"}");
+
+        deliveryLatency = new LatencyRecorder();
+        trackedAt = new ConcurrentHashMap<Integer, Long>();
+        pendingActivities = new AtomicInteger();
+        droppedActivities = new AtomicLong();
+        peakHeap = new AtomicLong();
+    }
+
+    @Override
+    public void onEventAccepted(int eventCount, long acceptedAt) {
+        Long eventTrackedAt = trackedAt.remove(eventCount);
+        if (eventTrackedAt != null) {
+            deliveryLatency.record(acceptedAt - eventTrackedAt);
+        }
+    }
+
+    private void run() throws Exception {
+        server.start();
+        System.out.println(String.format(Locale.US,
+                                         "Tracking %.1f events per second for %d s into %s",
+                                         rate, duration / Constants.ONE_SECOND, directory));
+
+        platform = new JvmPlatform(new FileStorage(directory), Clock.SYSTEM, server.getBaseUrl());
+        activityScheduler = platform.newScheduler("activity");
+        sessionEngine = new SessionEngine(platform.getClock());
+        activityStateStore = new ActivityStateStore(platform.getStorage());
+        attributeSet = BenchmarkFixtures.attributeSet();
+        attributionCache = new AttributionCache(platform.getStorage(), platform.getClock(), AttributionCache.DEFAULT_TTL);
+        attributionCache.read();
+        packageHandler = new PackageHandler(platform, FlushPolicy.getDefault(), attributionCache);
+
+        Thread heapSampler = startHeapSampler();
+        long startedAt = System.currentTimeMillis();
+        activityScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                startInternal();
+            }
+        });
+        activityScheduler.postDelayed(timerTask, TIMER_INTERVAL);
+
+        trackEvents(startedAt);
+        long loadFinishedAt = System.currentTimeMillis();
+        activityScheduler.cancel(timerTask);
+        MetricsSnapshot afterLoad = Metrics.snapshot();
+
+        // wait for the pending activities, then send everything that is left
+        while (pendingActivities.get() > 0) {
+            Thread.sleep(10);
+        }
+        FlushRequest flushRequest = new FlushRequest(drainTimeout, null);
+        packageHandler.flushPackages(flushRequest);
+        FlushResult flushResult = flushRequest.get(drainTimeout + Constants.ONE_MINUTE, TimeUnit.MILLISECONDS);
+        long drainedAt = System.currentTimeMillis();
+
+        heapSampler.interrupt();
+        server.stop();
+        report(startedAt, loadFinishedAt, drainedAt, afterLoad, flushResult);
+    }
+
+    // the calling side of trackEvent, paced to the configured rate
+    private void trackEvents(long startedAt) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(duration);
+
+        for (long next = startNanos; next < endNanos; next += intervalNanos) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            trackEvent();
+        }
+    }
+
+    private void trackEvent() {
+        if (pendingActivities.incrementAndGet() > MAX_PENDING_ACTIVITIES) {
+            pendingActivities.decrementAndGet();
+            droppedActivities.incrementAndGet();
+            return;
+        }
+
+        final long eventTrackedAt = System.currentTimeMillis();
+        activityScheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                trackEventInternal(eventTrackedAt);
+            }
+        });
+    }
+
+    // the same steps as ActivityHandler.startInternal and trackEventInternal
+
+    private void startInternal() {
+        packageHandler.resumeSending();
+
+        PackageBuilder sessionBuilder = sessionEngine.startSubsession();
+        if (sessionBuilder != null) {
+            sessionBuilder.setPackageId(Tracing.nextPackageId());
+            sessionBuilder.setAttributeSet(attributeSet);
+            packageHandler.addPackage(sessionBuilder.buildSessionPackage());
+            packageHandler.sendFirstPackage();
+        }
+        activityStateStore.write(sessionEngine.getActivityState());
+    }
+
+    private void trackEventInternal(long eventTrackedAt) {
+        pendingActivities.decrementAndGet();
+
+        PackageBuilder eventBuilder = new PackageBuilder();
+        eventBuilder.setPackageId(Tracing.nextPackageId());
+        eventBuilder.setEventToken("abc123");
+        eventBuilder.setAttributeSet(attributeSet);
+        sessionEngine.trackEvent(eventBuilder);
+        trackedAt.put(sessionEngine.getActivityState().eventCount, eventTrackedAt);
+        trackedEvents++;
+
+        packageHandler.addPackage(eventBuilder.buildEventPackage());
+        packageHandler.sendFirstPackage();
+        activityStateStore.write(sessionEngine.getActivityState());
+    }
+
+    private final Runnable timerTask = new Runnable() {
+        @Override
+        public void run() {
+            packageHandler.sendFirstPackage();
+            sessionEngine.update();
+            activityStateStore.write(sessionEngine.getActivityState());
+            activityScheduler.postDelayed(this, TIMER_INTERVAL);
+        }
+    };
+
+    private Thread startHeapSampler() {
+        final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    long used = memoryBean.getHeapMemoryUsage().getUsed();
+                    if (used > peakHeap.get()) {
+                        peakHeap.set(used);
+                    }
+                    try {
+                        Thread.sleep(HEAP_SAMPLE_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "heap sampler");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // the flush result counts session packages too, so read back the queue file
+    private int countQueuedEvents() {
+        PackageQueue packageQueue = new PackageQueue(platform.getStorage());
+        packageQueue.read();
+
+        int queuedEvents = 0;
+        while (!packageQueue.isEmpty()) {
+            if (packageQueue.removeFirst().getPath().equals(ActivityPackage.PackageType.EVENT.getPath())) {
+                queuedEvents++;
+            }
+        }
+        return queuedEvents;
+    }
+
+    private void report(long startedAt, long loadFinishedAt, long drainedAt,
+                        MetricsSnapshot afterLoad, FlushResult flushResult) {
+        MetricsSnapshot metrics = Metrics.snapshot();
+        long acceptedEvents = server.getAcceptedEvents();
+        long lostEvents = trackedEvents - acceptedEvents;
+        int queuedEvents = countQueuedEvents();
+        long unaccountedEvents = lostEvents - queuedEvents;
+        double loadSeconds = (loadFinishedAt - startedAt) / 1000.0;
+        double totalSeconds = (drainedAt - startedAt) / 1000.0;
+
+        System.out.println();
+        System.out.println(String.format(Locale.US, "load phase          %.1f s", loadSeconds));
+        System.out.println(String.format(Locale.US, "drain phase         %.1f s, %s",
+                                         totalSeconds - loadSeconds, flushResult));
+        System.out.println(String.format(Locale.US, "events tracked      %d (%d dropped at ingress)",
+                                         trackedEvents, droppedActivities.get()));
+        System.out.println(String.format(Locale.US, "events delivered    %d", acceptedEvents));
+        System.out.println(String.format(Locale.US, "throughput          %.1f events/s during load, %.1f events/s overall",
+                                         afterLoad.getPackagesDelivered() / loadSeconds,
+                                         acceptedEvents / totalSeconds));
+        System.out.println(String.format(Locale.US, "queue depth         %d after load, %d max",
+                                         afterLoad.getQueueDepth(), metrics.getMaxQueueDepth()));
+        System.out.println(String.format(Locale.US, "delivery latency    %s", deliveryLatency));
+        System.out.println(String.format(Locale.US, "peak heap           %.1f MB", peakHeap.get() / 1048576.0));
+        System.out.println(String.format(Locale.US, "bytes written       %d queue, %d activity state",
+                                         metrics.getPackageQueueBytesWritten(), metrics.getActivityStateBytesWritten()));
+        System.out.println(String.format(Locale.US, "files               %d bytes queue, %d bytes activity state",
+                                         new File(directory, "AdjustIoPackageQueue").length(),
+                                         new File(directory, Constants.SESSION_STATE_FILENAME).length()));
+        System.out.println(String.format(Locale.US, "requests            %d sent, %d retries, %d server errors, %d disconnects, %d stalls",
+                                         server.getRequests(), metrics.getRetries(),
+                                         server.getErrors(), server.getDisconnects(), server.getStalls()));
+        System.out.println(String.format(Locale.US, "circuit breaker     %d openings, %d sends skipped",
+                                         metrics.getCircuitOpenings(), metrics.getShortCircuitedRequests()));
+        System.out.println(String.format(Locale.US, "duplicate events    %d (%d lost responses, %d requests deduplicated by key)",
+                                         server.getDuplicateEvents(), server.getLostResponses(),
+                                         server.getDeduplicatedRequests()));
+        System.out.println(String.format(Locale.US, "lost events         %d (%d still queued, %d unaccounted)",
+                                         lostEvents, queuedEvents, unaccountedEvents));
+        System.out.println(String.format(Locale.US, "attribution         %s", attributionCache.get()));
+        System.out.println(String.format(Locale.US, "sdk metrics         %s", metrics));
+    }
+
+    private static File getDirectory(String directoryName) throws IOException {
+        if (directoryName != null) {
+            return new File(directoryName);
+        }
+
+        File directory = File.createTempFile("adjustio-soak", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Failed to create temporary directory");
+        }
+        return directory;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Malformed option '%s', use key=value", arg));
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String getString(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static double getDouble(Map<String, String> options, String key, double defaultValue) {
+        String value = options.get(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
@@ -0,0 +1,382 @@
+//
+//  StubTrackingServer.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-15.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLContext;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * A local stand-in for the tracking server with configurable latency,
+ * error rate and outages.
+ * <p/>
+ * Events are identified by their event_count parameter. The server keeps
+ * track of which ones it accepted, so lost and duplicate events can be told.
+ * <p/>
+ * The first request on a new connection can be delayed to stand in for DNS
+ * and the TCP and TLS handshakes. HEAD requests only open a connection.
+ * With an SSLContext the server speaks HTTPS.
+ */
+public class StubTrackingServer {
+    public interface Listener {
+        // an event was accepted with a 200 response
+        void onEventAccepted(int eventCount, long acceptedAt);
+    }
+
+    private final long     latency;          // all durations in milliseconds
+    private final long     jitter;
+    private final double   errorRate;        // answered with 500, the SDK retries those
+    private final double   disconnectRate;   // closed without response, the SDK retries those
+    private final long     outagePeriod;
+    private final long     outageLength;
+    private final Listener listener;
+
+    private final Random     random;
+    private final BitSet     acceptedEvents;
+    private final AtomicLong requests;
+    private final AtomicLong acceptedRequests;
+    private final AtomicLong duplicateEvents;
+    private final AtomicLong errors;
+    private final AtomicLong disconnects;
+    private final AtomicLong stalls;
+    private final AtomicLong lostResponses;
+    private final AtomicLong deduplicatedRequests;
+    private final Set<String> idempotencyKeys;
+    private final AtomicLong connections;
+    private final Set<String> remoteAddresses;
+
+    private volatile long       handshakeDelay;
+    private volatile boolean    closeConnections;
+    private volatile double     stallRate;
+    private volatile double     lostResponseRate;
+    private volatile String     attributionResponse;
+    private volatile int        outageStatus;
+    private          SSLContext sslContext;
+
+    private HttpServer      server;
+    private ExecutorService executor;
+    private long            startedAt;
+
+    public StubTrackingServer(long latency, long jitter, double errorRate, double disconnectRate,
+                              long outagePeriod, long outageLength, Listener listener) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+        this.disconnectRate = disconnectRate;
+        this.outagePeriod = outagePeriod;
+        this.outageLength = outageLength;
+        this.listener = listener;
+
+        random = new Random(42);
+        acceptedEvents = new BitSet();
+        requests = new AtomicLong();
+        acceptedRequests = new AtomicLong();
+        duplicateEvents = new AtomicLong();
+        errors = new AtomicLong();
+        disconnects = new AtomicLong();
+        stalls = new AtomicLong();
+        lostResponses = new AtomicLong();
+        deduplicatedRequests = new AtomicLong();
+        idempotencyKeys = new HashSet<String>();
+        connections = new AtomicLong();
+        remoteAddresses = new HashSet<String>();
+    }
+
+    // delay of the first request on every new connection, in milliseconds
+    public void setHandshakeDelay(long handshakeDelay) {
+        this.handshakeDelay = handshakeDelay;
+    }
+
+    // close the connection after every response, so every request needs a new one
+    public void setCloseConnections(boolean closeConnections) {
+        this.closeConnections = closeConnections;
+    }
+
+    // share of requests that never get a response, the SDK times out and retries those
+    public void setStallRate(double stallRate) {
+        this.stallRate = stallRate;
+    }
+
+    // share of requests that get processed but whose response never arrives, the SDK retries those
+    public void setLostResponseRate(double lostResponseRate) {
+        this.lostResponseRate = lostResponseRate;
+    }
+
+    // answer requests during an outage with this status, like an overloaded backend, instead of
+    // closing the connection; 0 closes it
+    public void setOutageStatus(int outageStatus) {
+        this.outageStatus = outageStatus;
+    }
+
+    // the body of successful session responses, for example {"tracker_token":"abc123"}
+    public void setAttributionResponse(String attributionResponse) {
+        this.attributionResponse = attributionResponse;
+    }
+
+    // serve HTTPS with the certificate of this context, call before start
+    public void setSslContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    public void start() throws IOException {
+        // otherwise responses on reused connections wait for delayed acknowledgements
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", 0);
+        if (sslContext != null) {
+            HttpsServer httpsServer = HttpsServer.create(address, 0);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server = httpsServer;
+        } else {
+            server = HttpServer.create(address, 0);
+        }
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleExchange(exchange);
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        startedAt = System.currentTimeMillis();
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // replaces Constants.BASE_URL
+    public String getBaseUrl() {
+        String scheme = sslContext != null ? "https" : "http";
+        return String.format("%s://127.0.0.1:%d", scheme, server.getAddress().getPort());
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getAcceptedRequests() {
+        return acceptedRequests.get();
+    }
+
+    public synchronized int getAcceptedEvents() {
+        return acceptedEvents.cardinality();
+    }
+
+    public long getDuplicateEvents() {
+        return duplicateEvents.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getDisconnects() {
+        return disconnects.get();
+    }
+
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    public long getLostResponses() {
+        return lostResponses.get();
+    }
+
+    // requests with the idempotency key of an accepted request, answered without processing them again
+    public long getDeduplicatedRequests() {
+        return deduplicatedRequests.get();
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public boolean isInOutage(long now) {
+        if (outagePeriod <= 0 || outageLength <= 0) {
+            return false;
+        }
+        long phase = (now - startedAt) % outagePeriod;
+        return phase >= outagePeriod - outageLength;
+    }
+
+    private void handleExchange(HttpExchange exchange) throws IOException {
+        if (isNewConnection(exchange)) {
+            connections.incrementAndGet();
+            sleep(handshakeDelay);
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            readBody(exchange.getRequestBody());
+            if (closeConnections) {
+                exchange.getResponseHeaders().set("Connection", "close");
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        requests.incrementAndGet();
+        String body = readBody(exchange.getRequestBody());
+
+        boolean inOutage = isInOutage(System.currentTimeMillis());
+        if (inOutage && outageStatus > 0) {
+            errors.incrementAndGet();
+            respond(exchange, outageStatus, "{\"error\":\"stub server outage\"}");
+            return;
+        }
+
+        if (inOutage || nextDouble() < disconnectRate) {
+            disconnects.incrementAndGet();
+            exchange.close(); // no response, the client sees a network error
+            return;
+        }
+
+        if (nextDouble() < stallRate) {
+            stalls.incrementAndGet();
+            sleep(Long.MAX_VALUE); // until the server stops
+            return;
+        }
+
+        sleep(latency + (jitter > 0 ? (long) (nextDouble() * jitter) : 0));
+
+        String path = exchange.getRequestURI().getPath();
+        boolean isEvent = path.endsWith("/event");
+        String successBody = path.endsWith("/startup") && attributionResponse != null ? attributionResponse : "{}";
+        if (nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            respond(exchange, 500, "{\"error\":\"stub server error\"}");
+            return;
+        }
+
+        String idempotencyKey = exchange.getRequestHeaders().getFirst(IdempotencyKey.HEADER);
+        if (idempotencyKey != null && !addIdempotencyKey(idempotencyKey)) {
+            deduplicatedRequests.incrementAndGet();
+            respond(exchange, 200, successBody);
+            return;
+        }
+
+        acceptedRequests.incrementAndGet();
+        if (isEvent) {
+            acceptEvent(getEventCount(body));
+        }
+
+        if (nextDouble() < lostResponseRate) {
+            lostResponses.incrementAndGet();
+            exchange.close(); // processed, but the client sees a network error
+            return;
+        }
+        respond(exchange, 200, successBody);
+    }
+
+    private void acceptEvent(int eventCount) {
+        if (eventCount < 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (acceptedEvents.get(eventCount)) {
+                duplicateEvents.incrementAndGet();
+                return;
+            }
+            acceptedEvents.set(eventCount);
+        }
+        if (listener != null) {
+            listener.onEventAccepted(eventCount, System.currentTimeMillis());
+        }
+    }
+
+    // false if a request with this key was accepted before
+    private boolean addIdempotencyKey(String idempotencyKey) {
+        synchronized (idempotencyKeys) {
+            return idempotencyKeys.add(idempotencyKey);
+        }
+    }
+
+    // the client port tells the connections apart
+    private boolean isNewConnection(HttpExchange exchange) {
+        String remoteAddress = exchange.getRemoteAddress().toString();
+        synchronized (remoteAddresses) {
+            return remoteAddresses.add(remoteAddress);
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private static int getEventCount(String body) {
+        String key = "event_count=";
+        int start;
+        if (body.startsWith(key)) {
+            start = key.length();
+        } else {
+            int index = body.indexOf("&" + key);
+            if (index < 0) {
+                return -1;
+            }
+            start = index + 1 + key.length();
+        }
+
+        int end = body.indexOf('&', start);
+        try {
+            return Integer.parseInt(end < 0 ? body.substring(start) : body.substring(start, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String readBody(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = inputStream.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toString(Constants.ENCODING);
+    }
+
+    private void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bytes = body.getBytes(Constants.ENCODING);
+        if (closeConnections) {
+            exchange.getResponseHeaders().set("Connection", "close");
+        }
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static void sleep(long milliseconds) {
+        if (milliseconds <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+//
+//  TlsResumptionCheck.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Sends requests over HTTPS to a local stub server with a self-signed
+ * certificate that closes every connection, and checks that only the first
+ * connection does a full TLS handshake while all later ones resume the
+ * session.
+ * <p/>
+ * For comparison the same requests are sent with a new SSLContext each, which
+ * has no cached session. The certificate is created with keytool.
+ * <p/>
+ * Options are passed as key=value, see doc/benchmarks.md.
+ */
+public class TlsResumptionCheck {
+    private static final String PASSWORD         = "adjustio";
+    private static final long   LISTENER_TIMEOUT = Constants.ONE_SECOND;
+
+    private final int requests;
+
+    private StubTrackingServer server;
+    private KeyStore           keyStore;
+    private TrackingRequest    request;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Logger.setLogLevelString(getString(options, "log", "assert"));
+
+        TlsResumptionCheck check = new TlsResumptionCheck(options);
+        boolean passed = check.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private TlsResumptionCheck(Map<String, String> options) {
+        requests = getInt(options, "requests", 20);
+    }
+
+    private boolean run() throws Exception {
+        keyStore = createKeyStore();
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD.toCharArray());
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        server = new StubTrackingServer(0, 0, 0, 0, 0, 0, null);
+        server.setSslContext(serverContext);
+        server.setCloseConnections(true);
+        server.start();
+
+        try {
+            PackageBuilder builder = new PackageBuilder();
+            builder.setPackageId(Tracing.nextPackageId());
+            builder.setAttributeSet(BenchmarkFixtures.attributeSet());
+            builder.setSessionCount(1);
+            request = RequestEncoder.getRequest(builder.buildSessionPackage(), Collections.<String, String>emptyMap());
+
+            sendRequests(false); // warm up the JVM
+            long[] uncached = sendRequests(false);
+            long[] cached = sendRequests(true);
+
+            System.out.println(String.format(Locale.US, "requests            %d, every one on a new connection", requests));
+            System.out.println(String.format(Locale.US, "new context each    %d full, %d resumed, %.2f ms per request",
+                                             uncached[0], uncached[1], uncached[2] / 1000000.0 / requests));
+            System.out.println(String.format(Locale.US, "shared context      %d full, %d resumed, %.2f ms per request",
+                                             cached[0], cached[1], cached[2] / 1000000.0 / requests));
+
+            boolean passed = cached[0] == 1 && cached[1] == requests - 1;
+            System.out.println(passed ? "PASSED" : "FAILED");
+            return passed;
+        } finally {
+            server.stop();
+        }
+    }
+
+    // returns the full and resumed handshakes and the total duration in nanoseconds
+    private long[] sendRequests(boolean shareContext) throws Exception {
+        MetricsSnapshot before = Metrics.snapshot();
+        long expectedHandshakes = before.getFullTlsHandshakes() + before.getResumedTlsHandshakes() + requests;
+        Transport transport = shareContext ? newTransport() : null;
+
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            if (!shareContext) {
+                transport = newTransport();
+            }
+            TrackingResponse response = transport.send(request, TimeoutEstimator.MAX_TIMEOUT);
+            if (response.getStatusCode() != 200) {
+                throw new IllegalStateException(String.format("Unexpected response %d", response.getStatusCode()));
+            }
+        }
+        long duration = System.nanoTime() - startedAt;
+
+        // the handshake listeners run on their own threads
+        long deadline = System.currentTimeMillis() + LISTENER_TIMEOUT;
+        MetricsSnapshot after = Metrics.snapshot();
+        while (after.getFullTlsHandshakes() + after.getResumedTlsHandshakes() < expectedHandshakes
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            after = Metrics.snapshot();
+        }
+
+        return new long[] {
+            after.getFullTlsHandshakes() - before.getFullTlsHandshakes(),
+            after.getResumedTlsHandshakes() - before.getResumedTlsHandshakes(),
+            duration
+        };
+    }
+
+    // every transport with its own SSLContext starts with an empty session cache
+    private Transport newTransport() throws Exception {
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagerFactory.getTrustManagers(), null);
+        return new UrlConnectionTransport(server.getBaseUrl(), clientContext.getSocketFactory());
+    }
+
+    private static KeyStore createKeyStore() throws Exception {
+        File file = File.createTempFile("adjustio-tls", ".p12");
+        if (!file.delete()) {
+            throw new IOException("Failed to prepare key store file");
+        }
+
+        String keytool = new File(new File(System.getProperty("java.home"), "bin"), "keytool").getPath();
+        Process process = new ProcessBuilder(
+            keytool, "-genkeypair", "-alias", "stub", "-keyalg", "RSA", "-keysize", "2048",
+            "-dname", "CN=127.0.0.1", "-ext", "SAN=ip:127.0.0.1", "-validity", "1",
+            "-storetype", "PKCS12", "-keystore", file.getPath(),
+            "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .redirectErrorStream(true)
+            .start();
+        if (process.waitFor() != 0) {
+            throw new IOException("Failed to create a self-signed certificate with keytool");
+        }
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            keyStore.load(inputStream, PASSWORD.toCharArray());
+        } finally {
+            inputStream.close();
+            file.delete();
+        }
+        return keyStore;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(String.format("Malformed option '%s', use key=value", arg));
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static String getString(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int getInt(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
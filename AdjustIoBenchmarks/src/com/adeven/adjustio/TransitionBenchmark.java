@@ -0,0 +1,124 @@
+//
+//  TransitionBenchmark.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-21.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// a pause followed by a resume while switching between two activities, the score is per transition
+//
+// ActivityHandler needs Android, so both benchmarks repeat its steps: the uncoalesced one what
+// endInternal and startInternal did before the grace window, the coalesced one what they do now
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TransitionBenchmark {
+    private static final long TRANSITION_DURATION = 100; // milliseconds between pause and resume
+
+    private File               directory;
+    private ManualClock        clock;
+    private SessionEngine      sessionEngine;
+    private ActivityStateStore activityStateStore;
+    private ScheduledExecutorService timer;
+
+    @Setup
+    public void setUp() throws IOException {
+        Logger.setLogLevel(Logger.LogLevel.ASSERT);
+
+        directory = File.createTempFile("adjustio-transition", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Failed to create temporary directory");
+        }
+
+        clock = new ManualClock();
+        clock.now = System.currentTimeMillis();
+        sessionEngine = new SessionEngine(clock);
+        activityStateStore = new ActivityStateStore(new FileStorage(directory));
+        sessionEngine.startSubsession();
+        activityStateStore.write(sessionEngine.getActivityState());
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public ActivityState uncoalesced() {
+        // endInternal: stop the timer thread, update and write the state
+        if (timer != null) {
+            timer.shutdown();
+        }
+        sessionEngine.update();
+        activityStateStore.write(sessionEngine.getActivityState());
+
+        clock.now += TRANSITION_DURATION;
+
+        // startInternal: a new timer thread, a subsession and another write
+        timer = Executors.newSingleThreadScheduledExecutor();
+        timer.scheduleWithFixedDelay(NO_OP, 1000, Constants.ONE_MINUTE, TimeUnit.MILLISECONDS);
+        sessionEngine.startSubsession();
+        activityStateStore.write(sessionEngine.getActivityState());
+        return sessionEngine.getActivityState();
+    }
+
+    @Benchmark
+    public ActivityState coalesced() {
+        // endInternal only updates the state, the resume arrives before the grace window ends
+        sessionEngine.update();
+
+        clock.now += TRANSITION_DURATION;
+
+        sessionEngine.startSubsession();
+        return sessionEngine.getActivityState();
+    }
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private static class ManualClock implements Clock {
+        private long now;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+//
+//  ActivityPackage.java
+//  AdjustIo
+//
+//  Created by Christian Wellenbrock on 2013-06-25.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+public class ActivityPackage implements Serializable {
+    private static final long serialVersionUID = -35935556512024097L;
+
+    public enum PackageType {
+        EVENT("/event", "event"), REVENUE("/revenue", "revenue"), SESSION_START("/startup", "session start"),
+        AGGREGATE("/aggregate", "aggregated events");
+        private final String path;
+        private final String kind;
+
+        PackageType(final String path, final String kind) {
+            this.path = path;
+            this.kind = kind;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+    }
+
+    // data
+    private long                packageId;
+    private String              idempotencyKey; // null in packages written before idempotency keys
+    private PackageType         type;
+    private String              userAgent;   // only set in packages written before attribute sets
+    private String              clientSdk;
+    private Map<String, String> parameters;
+    private AttributeSet        attributeSet; // shared between packages, written once per queue file
+    private long                queuedAt;  // milliseconds since 1970, set by the package handler
+    private int                 serverErrors; // answers with status 5xx so far, set by the package handler
+    private transient long      lastServerErrorAt; // of the last counted server error, milliseconds since 1970
+    private transient long[]    aggregatedPackageIds; // of the events in an aggregate package, for tracing only
+
+    // logs
+    private String suffix;
+
+    public long getPackageId() {
+        return packageId;
+    }
+
+    public void setPackageId(long packageId) {
+        this.packageId = packageId;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public PackageType getType() {
+        return type;
+    }
+
+    public void setType(PackageType type) {
+        this.type = type;
+    }
+
+    public String getPath() {
+        return type.getPath();
+    }
+
+    public String getUserAgent() {
+        if (attributeSet != null) {
+            return attributeSet.getUserAgent();
+        }
+        return userAgent;
+    }
+
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    public String getClientSdk() {
+        if (attributeSet != null) {
+            return attributeSet.getClientSdk();
+        }
+        return clientSdk;
+    }
+
+    public void setClientSdk(String clientSdk) {
+        this.clientSdk = clientSdk;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(Map<String, String> parameters) {
+        this.parameters = parameters;
+    }
+
+    public AttributeSet getAttributeSet() {
+        return attributeSet;
+    }
+
+    public void setAttributeSet(AttributeSet attributeSet) {
+        this.attributeSet = attributeSet;
+    }
+
+    // parameters of the attribute set, empty for packages without one
+    public Map<String, String> getGeneralParameters() {
+        if (null == attributeSet) {
+            return Collections.emptyMap();
+        }
+        return attributeSet.getParameters();
+    }
+
+    public long getQueuedAt() {
+        return queuedAt;
+    }
+
+    public void setQueuedAt(long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
+
+    public int getServerErrors() {
+        return serverErrors;
+    }
+
+    public void setServerErrors(int serverErrors) {
+        this.serverErrors = serverErrors;
+    }
+
+    public long getLastServerErrorAt() {
+        return lastServerErrorAt;
+    }
+
+    public void setLastServerErrorAt(long lastServerErrorAt) {
+        this.lastServerErrorAt = lastServerErrorAt;
+    }
+
+    public long[] getAggregatedPackageIds() {
+        return aggregatedPackageIds;
+    }
+
+    public void setAggregatedPackageIds(long[] aggregatedPackageIds) {
+        this.aggregatedPackageIds = aggregatedPackageIds;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public void setSuffix(String suffix) {
+        this.suffix = suffix;
+    }
+
+    public String toString() {
+        return String.format("%s%s", type.getKind(), suffix);
+    }
+
+    // rough size of the request content, used for flush thresholds
+    protected int getByteCount() {
+        int byteCount = length(type.getPath()) + length(getUserAgent()) + length(getClientSdk());
+        byteCount += getByteCount(getGeneralParameters());
+        if (parameters != null) {
+            byteCount += getByteCount(parameters);
+        }
+        return byteCount;
+    }
+
+    protected String getExtendedString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Path:      %s\n", type.getPath()));
+        builder.append(String.format("UserAgent: %s\n", getUserAgent()));
+        builder.append(String.format("ClientSdk: %s\n", getClientSdk()));
+
+        builder.append("Parameters:");
+        for (Map.Entry<String, String> entity : getGeneralParameters().entrySet()) {
+            builder.append(String.format("\n\t%-16s %s", entity.getKey(), entity.getValue()));
+        }
+        if (parameters != null) {
+            for (Map.Entry<String, String> entity : parameters.entrySet()) {
+                builder.append(String.format("\n\t%-16s %s", entity.getKey(), entity.getValue()));
+            }
+        }
+        return builder.toString();
+    }
+
+    protected String getSuccessMessage() {
+        try {
+            return String.format("Tracked %s%s", type.getKind(), suffix);
+        } catch (NullPointerException e) {
+            return "Tracked ???";
+        }
+    }
+
+    protected String getFailureMessage() {
+        try {
+            return String.format("Failed to track %s%s", type.getKind(), suffix);
+        } catch (NullPointerException e) {
+            return "Failed to track ???";
+        }
+    }
+
+    private static int getByteCount(Map<String, String> parameters) {
+        int byteCount = 0;
+        for (Map.Entry<String, String> entity : parameters.entrySet()) {
+            byteCount += length(entity.getKey()) + length(entity.getValue()) + 2;
+        }
+        return byteCount;
+    }
+
+    private static int length(String string) {
+        if (null == string) {
+            return 0;
+        }
+        return string.length();
+    }
+}
@@ -67,6 +67,35 @@ public class ActivityState implements Serializable {
                              stamp(lastActivity));
     }
 
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+        if (!(object instanceof ActivityState)) {
+            return false;
+        }
+
+        ActivityState other = (ActivityState) object;
+        return eventCount == other.eventCount
+            && sessionCount == other.sessionCount
+            && subsessionCount == other.subsessionCount
+            && sessionLength == other.sessionLength
+            && timeSpent == other.timeSpent
+            && lastActivity == other.lastActivity
+            && createdAt == other.createdAt
+            && lastInterval == other.lastInterval;
+    }
+
+    public int hashCode() {
+        int hashCode = eventCount;
+        hashCode = 31 * hashCode + sessionCount;
+        hashCode = 31 * hashCode + subsessionCount;
+        hashCode = 31 * hashCode + (int) (sessionLength ^ (sessionLength >>> 32));
+        hashCode = 31 * hashCode + (int) (timeSpent ^ (timeSpent >>> 32));
+        hashCode = 31 * hashCode + (int) (lastActivity ^ (lastActivity >>> 32));
+        return hashCode;
+    }
+
     private static String stamp(long dateMillis) {
         Date date = new Date(dateMillis);
         return String.format(Locale.US,
@@ -0,0 +1,108 @@
+//
+//  ActivityStateStore.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import static com.adeven.adjustio.Constants.SESSION_STATE_FILENAME;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
+import java.io.OutputStream;
+
+/**
+ * Persists the activity state between launches.
+ */
+public class ActivityStateStore {
+    private final Storage storage;
+
+    protected ActivityStateStore(Storage storage) {
+        this.storage = storage;
+    }
+
+    // null if there is no valid activity state yet
+    protected ActivityState read() {
+        try {
+            InputStream inputStream = storage.openInput(SESSION_STATE_FILENAME);
+
+            try {
+                ActivityState activityState = readActivityState(inputStream);
+                Logger.debug(String.format("Read activity state: %s", activityState));
+                return activityState;
+            } catch (ClassNotFoundException e) {
+                Logger.error("Failed to find activity state class");
+            } catch (OptionalDataException e) {
+                /* no-op */
+            } catch (IOException e) {
+                Logger.error("Failed to read activity states object");
+            } catch (ClassCastException e) {
+                Logger.error("Failed to cast activity state object");
+            } finally {
+                inputStream.close();
+            }
+
+        } catch (FileNotFoundException e) {
+            Logger.verbose("Activity state file not found");
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to open activity state file for reading (%s)", e));
+        }
+
+        // start with a fresh activity state in case of any exception
+        return null;
+    }
+
+    protected void write(ActivityState activityState) {
+        try {
+            OutputStream outputStream = storage.openOutput(SESSION_STATE_FILENAME);
+            CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+
+            try {
+                writeActivityState(activityState, countingStream);
+                Logger.verbose(String.format("Wrote activity state: %s", activityState));
+            } catch (NotSerializableException e) {
+                Logger.error("Failed to serialize activity state");
+            } finally {
+                countingStream.close();
+                Metrics.activityStateWritten(countingStream.getByteCount());
+            }
+
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to open activity state for writing (%s)", e));
+        }
+    }
+
+    // stream level part of the persistence, also used by the benchmarks
+    protected static ActivityState readActivityState(InputStream inputStream) throws IOException, ClassNotFoundException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
+        ObjectInputStream objectStream = new ObjectInputStream(bufferedStream);
+
+        try {
+            return (ActivityState) objectStream.readObject();
+        } finally {
+            objectStream.close();
+        }
+    }
+
+    protected static void writeActivityState(ActivityState activityState, OutputStream outputStream) throws IOException {
+        BufferedOutputStream bufferedStream = new BufferedOutputStream(outputStream);
+        ObjectOutputStream objectStream = new ObjectOutputStream(bufferedStream);
+
+        try {
+            objectStream.writeObject(activityState);
+        } finally {
+            objectStream.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+//
+//  AttributeSet.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-08.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+// general attributes shared by all packages of the same app and device
+public class AttributeSet implements Serializable {
+    private static final long serialVersionUID = 5176281453829016442L;
+
+    private final String              userAgent;
+    private final String              clientSdk;
+    private final Map<String, String> parameters;
+
+    protected AttributeSet(String userAgent, String clientSdk, Map<String, String> parameters) {
+        this.userAgent = userAgent;
+        this.clientSdk = clientSdk;
+        this.parameters = Collections.unmodifiableMap(parameters);
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public String getClientSdk() {
+        return clientSdk;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof AttributeSet)) {
+            return false;
+        }
+
+        AttributeSet otherSet = (AttributeSet) other;
+        return equal(userAgent, otherSet.userAgent)
+            && equal(clientSdk, otherSet.clientSdk)
+            && parameters.equals(otherSet.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = parameters.hashCode();
+        hashCode = 31 * hashCode + (null == userAgent ? 0 : userAgent.hashCode());
+        hashCode = 31 * hashCode + (null == clientSdk ? 0 : clientSdk.hashCode());
+        return hashCode;
+    }
+
+    private static boolean equal(String a, String b) {
+        return null == a ? null == b : a.equals(b);
+    }
+}
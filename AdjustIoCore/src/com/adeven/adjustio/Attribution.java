@@ -0,0 +1,116 @@
+//
+//  Attribution.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The tracker the server attributed the install to, taken from its answer to
+ * the session package. Immutable, fields the server did not send are null.
+ * <p/>
+ * See {@link AdjustIo#getAttribution()}.
+ */
+public class Attribution implements Serializable {
+    private static final long serialVersionUID = 4906373613612327413L;
+
+    private final String trackerToken;
+    private final String trackerName;
+    private final String network;
+    private final String campaign;
+    private final String adgroup;
+    private final String creative;
+
+    public Attribution(String trackerToken, String trackerName, String network,
+                       String campaign, String adgroup, String creative) {
+        this.trackerToken = trackerToken;
+        this.trackerName = trackerName;
+        this.network = network;
+        this.campaign = campaign;
+        this.adgroup = adgroup;
+        this.creative = creative;
+    }
+
+    // null if the response contains no attribution
+    protected static Attribution fromJson(String json) {
+        Map<String, String> members = Encoding.fromJson(json);
+        if (null == members || null == members.get("tracker_token")) {
+            return null;
+        }
+
+        return new Attribution(members.get("tracker_token"),
+                               members.get("tracker_name"),
+                               members.get("network"),
+                               members.get("campaign"),
+                               members.get("adgroup"),
+                               members.get("creative"));
+    }
+
+    public String getTrackerToken() {
+        return trackerToken;
+    }
+
+    public String getTrackerName() {
+        return trackerName;
+    }
+
+    public String getNetwork() {
+        return network;
+    }
+
+    public String getCampaign() {
+        return campaign;
+    }
+
+    public String getAdgroup() {
+        return adgroup;
+    }
+
+    public String getCreative() {
+        return creative;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == this) {
+            return true;
+        }
+        if (!(other instanceof Attribution)) {
+            return false;
+        }
+
+        Attribution attribution = (Attribution) other;
+        return equal(trackerToken, attribution.trackerToken)
+            && equal(trackerName, attribution.trackerName)
+            && equal(network, attribution.network)
+            && equal(campaign, attribution.campaign)
+            && equal(adgroup, attribution.adgroup)
+            && equal(creative, attribution.creative);
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 17;
+        for (String field : new String[] { trackerToken, trackerName, network, campaign, adgroup, creative }) {
+            hashCode = 37 * hashCode + (field != null ? field.hashCode() : 0);
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tracker:%s (%s) network:%s campaign:%s adgroup:%s creative:%s",
+                             trackerToken, trackerName, network, campaign, adgroup, creative);
+    }
+
+    private static boolean equal(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,144 @@
+//
+//  AttributionCache.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Keeps the last attribution from the server in memory and in a file, so
+ * the app can read it without a request of its own.
+ * <p/>
+ * Every session package refreshes it. An attribution older than the time to
+ * live is not returned anymore. The listener only gets called when the
+ * attribution differs from the last one, also across launches.
+ * <p/>
+ * Thread safe, read on the activity thread, updated on the request threads
+ * and queried from any thread without disk access. Updates run one at a time
+ * and load the stored attribution first, in case they come before the read.
+ */
+public class AttributionCache {
+    protected static final long DEFAULT_TTL = 24 * 60 * Constants.ONE_MINUTE;
+
+    private static final String ATTRIBUTION_FILENAME = "AdjustIoAttribution";
+
+    private static volatile OnAttributionChangedListener listener;
+
+    private final Storage     storage;
+    private final Clock       clock;
+    private final long        ttl;
+    private final Object      updateLock;  // held during disk access, the lock of this object never is
+    private       Attribution attribution; // the last one, even if expired
+    private       long        receivedAt;
+    private       boolean     loaded;      // guarded by updateLock
+
+    protected AttributionCache(Storage storage, Clock clock, long ttl) {
+        this.storage = storage;
+        this.clock = clock;
+        this.ttl = ttl;
+        this.updateLock = new Object();
+    }
+
+    protected static void setListener(OnAttributionChangedListener listener) {
+        AttributionCache.listener = listener;
+    }
+
+    // null if there is no attribution yet or it expired
+    protected synchronized Attribution get() {
+        if (null == attribution || clock.currentTimeMillis() - receivedAt > ttl) {
+            return null;
+        }
+        return attribution;
+    }
+
+    // the listener gets called under the update lock, so it sees the changes in the order of the file
+    protected void update(Attribution newAttribution) {
+        synchronized (updateLock) {
+            load();
+
+            long now = clock.currentTimeMillis();
+            boolean changed;
+            synchronized (this) {
+                changed = !newAttribution.equals(attribution);
+                attribution = newAttribution;
+                receivedAt = now;
+            }
+            write(newAttribution, now); // also when unchanged, for the time to live
+
+            if (!changed) {
+                Logger.verbose("Attribution unchanged");
+                return;
+            }
+
+            Logger.info(String.format("Attribution changed (%s)", newAttribution));
+            OnAttributionChangedListener listener = AttributionCache.listener;
+            if (listener != null) {
+                try {
+                    listener.onAttributionChanged(newAttribution);
+                } catch (Exception e) {
+                    Logger.error(String.format("Attribution listener failed (%s)", e));
+                }
+            }
+        }
+    }
+
+    // the disk access happens outside the lock of this object, so queries never wait for it
+    protected void read() {
+        synchronized (updateLock) {
+            load();
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        try {
+            ObjectInputStream objectStream = new ObjectInputStream(
+                new BufferedInputStream(storage.openInput(ATTRIBUTION_FILENAME)));
+            try {
+                Attribution storedAttribution = (Attribution) objectStream.readObject();
+                long storedAt = objectStream.readLong();
+                Logger.debug(String.format("Read attribution: %s", storedAttribution));
+
+                synchronized (this) {
+                    attribution = storedAttribution;
+                    receivedAt = storedAt;
+                }
+            } finally {
+                objectStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            Logger.verbose("Attribution file not found");
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to read attribution (%s)", e));
+        }
+    }
+
+    private void write(Attribution attribution, long receivedAt) {
+        try {
+            ObjectOutputStream objectStream = new ObjectOutputStream(
+                new BufferedOutputStream(storage.openOutput(ATTRIBUTION_FILENAME)));
+            try {
+                objectStream.writeObject(attribution);
+                objectStream.writeLong(receivedAt);
+            } finally {
+                objectStream.close();
+            }
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to write attribution (%s)", e));
+        }
+    }
+}
@@ -0,0 +1,146 @@
+//
+//  CircuitBreaker.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Locale;
+
+/**
+ * Stops sending requests while the tracking server or the network keeps
+ * failing, see {@link CircuitState}.
+ * <p/>
+ * The circuit opens when at least half of the last requests failed. After
+ * the open time one probe request may pass. If it succeeds the circuit
+ * closes, otherwise it opens again for twice as long.
+ * <p/>
+ * Thread safe, the package handler asks for permission and the request
+ * handler reports the outcomes.
+ */
+public class CircuitBreaker {
+    private static final int    WINDOW_SIZE       = 20;  // last outcomes that count
+    private static final int    MIN_REQUESTS      = 5;   // outcomes needed before opening
+    private static final double FAILURE_THRESHOLD = 0.5;
+    private static final long   MIN_OPEN_TIME     = Constants.THIRTY_SECONDS;
+    private static final long   MAX_OPEN_TIME     = 2 * Constants.ONE_MINUTE;
+
+    private final Clock     clock;
+    private final boolean[] failed;       // ring buffer of the last outcomes
+    private       int       outcomeCount;
+    private       int       failureCount;
+    private       int       nextIndex;
+
+    private CircuitState state;
+    private long         openTime;
+    private long         openedAt;
+    private boolean      probing;      // the probe of the half open state is running
+
+    protected CircuitBreaker(Clock clock) {
+        this.clock = clock;
+        this.failed = new boolean[WINDOW_SIZE];
+        this.state = CircuitState.CLOSED;
+        this.openTime = MIN_OPEN_TIME;
+    }
+
+    // false if the request should not be sent, true for the probe after the open time
+    protected synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (getRemainingOpenTime() > 0) {
+                    return false;
+                }
+                setState(CircuitState.HALF_OPEN);
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    protected synchronized boolean isClosed() {
+        return state == CircuitState.CLOSED;
+    }
+
+    // milliseconds until the next probe may be sent
+    protected synchronized long getRemainingOpenTime() {
+        if (state != CircuitState.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openedAt + openTime - clock.currentTimeMillis());
+    }
+
+    protected synchronized void requestSucceeded() {
+        probing = false;
+        if (state == CircuitState.HALF_OPEN) {
+            openTime = MIN_OPEN_TIME;
+            clearOutcomes();
+            setState(CircuitState.CLOSED);
+        } else if (state == CircuitState.CLOSED) {
+            addOutcome(false);
+        }
+    }
+
+    protected synchronized void requestFailed() {
+        probing = false;
+        if (state == CircuitState.HALF_OPEN) {
+            openTime = Math.min(MAX_OPEN_TIME, openTime * 2);
+            open();
+        } else if (state == CircuitState.CLOSED) {
+            addOutcome(true);
+            if (outcomeCount >= MIN_REQUESTS && failureCount >= FAILURE_THRESHOLD * outcomeCount) {
+                open();
+            }
+        }
+    }
+
+    // the request failed on the device, so it tells nothing about the server
+    protected synchronized void requestSkipped() {
+        probing = false;
+    }
+
+    private void open() {
+        openedAt = clock.currentTimeMillis();
+        setState(CircuitState.OPEN);
+        Logger.info(String.format(Locale.US, "Too many failed requests, pausing for %d seconds",
+                                  openTime / Constants.ONE_SECOND));
+    }
+
+    private void setState(CircuitState state) {
+        this.state = state;
+        Metrics.circuitStateChanged(state);
+        Logger.debug(String.format("Circuit breaker %s", state));
+    }
+
+    private void addOutcome(boolean isFailure) {
+        if (outcomeCount == WINDOW_SIZE) {
+            if (failed[nextIndex]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+
+        failed[nextIndex] = isFailure;
+        if (isFailure) {
+            failureCount++;
+        }
+        nextIndex = (nextIndex + 1) % WINDOW_SIZE;
+    }
+
+    private void clearOutcomes() {
+        outcomeCount = 0;
+        failureCount = 0;
+        nextIndex = 0;
+    }
+}
@@ -0,0 +1,22 @@
+//
+//  CircuitState.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * States of the circuit breaker in front of the tracking server.
+ */
+public enum CircuitState {
+    /** Requests are sent. */
+    CLOSED,
+    /** Too many requests failed recently. Packages stay queued without network access. */
+    OPEN,
+    /** A single probe request is sent to find out whether the server recovered. */
+    HALF_OPEN
+}
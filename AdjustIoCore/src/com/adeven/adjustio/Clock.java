@@ -0,0 +1,25 @@
+//
+//  Clock.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Source of the current time for the session and queue logic.
+ */
+public interface Clock {
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /** @return The current time in milliseconds since 1970. */
+    long currentTimeMillis();
+}
@@ -0,0 +1,22 @@
+//
+//  ConsoleLogSink.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import static com.adeven.adjustio.Constants.LOGTAG;
+
+/**
+ * Prints log messages to standard error, the default outside of Android.
+ */
+public class ConsoleLogSink implements LogSink {
+    @Override
+    public void log(Logger.LogLevel logLevel, String message) {
+        System.err.println(String.format("%s %s: %s", logLevel.name().charAt(0), LOGTAG, message));
+    }
+}
@@ -0,0 +1,39 @@
+//
+//  CountingOutputStream.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-11.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// counts the bytes written to the wrapped stream
+public class CountingOutputStream extends FilterOutputStream {
+    private long byteCount;
+
+    protected CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    protected long getByteCount() {
+        return byteCount;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        byteCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        byteCount += len;
+    }
+}
@@ -0,0 +1,93 @@
+//
+//  CountingSslSocketFactory.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Counts the full and the resumed TLS handshakes of the sockets it creates,
+ * see {@link MetricsSnapshot#getResumedTlsHandshakes()}.
+ * <p/>
+ * A resumed session keeps the creation time of the session it continues, so
+ * a session created before the socket means the handshake was abbreviated.
+ */
+public class CountingSslSocketFactory extends SSLSocketFactory {
+    private final SSLSocketFactory delegate;
+
+    public CountingSslSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return watch(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return watch(delegate.createSocket(socket, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return watch(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return watch(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return watch(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return watch(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private static Socket watch(Socket socket) {
+        if (!(socket instanceof SSLSocket)) {
+            return socket;
+        }
+
+        final long createdAt = System.currentTimeMillis();
+        ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                Metrics.tlsHandshakeCompleted(isResumed(event.getSession().getCreationTime(), createdAt));
+            }
+        });
+        return socket;
+    }
+
+    protected static boolean isResumed(long sessionCreatedAt, long socketCreatedAt) {
+        return sessionCreatedAt < socketCreatedAt;
+    }
+}
@@ -0,0 +1,76 @@
+//
+//  DnsCache.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-21.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps resolved host names for a fixed time.
+ * <p/>
+ * Older Android versions cache DNS results for a few seconds only, so every
+ * session start would resolve the tracking host again. Failed lookups are
+ * not cached. Thread safe.
+ */
+public class DnsCache {
+    protected static final long DEFAULT_TTL = 5 * Constants.ONE_MINUTE;
+
+    private final Clock                   clock;
+    private final long                    ttl;
+    private final Map<String, CachedHost> hosts;
+
+    public DnsCache(Clock clock) {
+        this(clock, DEFAULT_TTL);
+    }
+
+    public DnsCache(Clock clock, long ttl) {
+        this.clock = clock;
+        this.ttl = ttl;
+        this.hosts = new HashMap<String, CachedHost>();
+    }
+
+    public InetAddress resolve(String host) throws UnknownHostException {
+        long now = clock.currentTimeMillis();
+        synchronized (hosts) {
+            CachedHost cachedHost = hosts.get(host);
+            if (cachedHost != null && now - cachedHost.resolvedAt < ttl) {
+                return cachedHost.address;
+            }
+        }
+
+        // resolve outside the lock, a slow lookup must not block other hosts
+        InetAddress address = InetAddress.getByName(host);
+        Logger.verbose(String.format(Locale.US, "Resolved %s to %s", host, address.getHostAddress()));
+
+        synchronized (hosts) {
+            hosts.put(host, new CachedHost(address, now));
+        }
+        return address;
+    }
+
+    public void clear() {
+        synchronized (hosts) {
+            hosts.clear();
+        }
+    }
+
+    private static class CachedHost {
+        private final InetAddress address;
+        private final long        resolvedAt;
+
+        private CachedHost(InetAddress address, long resolvedAt) {
+            this.address = address;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
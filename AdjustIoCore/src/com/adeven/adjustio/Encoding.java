@@ -0,0 +1,368 @@
+//
+//  Encoding.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import static com.adeven.adjustio.Constants.ENCODING;
+import static com.adeven.adjustio.Constants.MD5;
+import static com.adeven.adjustio.Constants.SHA1;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects the encoding functions used by AdjustIo (hashes, JSON and base64).
+ */
+public class Encoding {
+    private static final char[] HEX_DIGITS    = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64_DIGITS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    protected static String sha1(final String text) {
+        return hash(text, SHA1);
+    }
+
+    protected static String md5(final String text) {
+        return hash(text, MD5);
+    }
+
+    // flat JSON object with string values, escaped like org.json does (null values are left out)
+    protected static String toJson(Map<String, String> map) {
+        StringBuilder builder = new StringBuilder(32 * map.size() + 2);
+        builder.append('{');
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            if (null == entry.getValue()) {
+                continue;
+            }
+            if (builder.length() > 1) {
+                builder.append(',');
+            }
+            appendJsonString(builder, entry.getKey());
+            builder.append(':');
+            appendJsonString(builder, entry.getValue());
+        }
+        builder.append('}');
+        return builder.toString();
+    }
+
+    // the top level members of a JSON object, numbers and booleans as their text, nested values
+    // and nulls are left out, null if the text is no JSON object
+    protected static Map<String, String> fromJson(String json) {
+        try {
+            return new JsonReader(json).readObject();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // standard alphabet with padding and without line breaks
+    protected static String toBase64(byte[] bytes) {
+        char[] chars = new char[(bytes.length + 2) / 3 * 4];
+        int index = 0;
+        for (int offset = 0; offset < bytes.length; offset += 3) {
+            int remaining = bytes.length - offset;
+            int bits = (bytes[offset] & 0xff) << 16;
+            if (remaining > 1) {
+                bits |= (bytes[offset + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                bits |= bytes[offset + 2] & 0xff;
+            }
+
+            chars[index++] = BASE64_DIGITS[(bits >> 18) & 0x3f];
+            chars[index++] = BASE64_DIGITS[(bits >> 12) & 0x3f];
+            chars[index++] = remaining > 1 ? BASE64_DIGITS[(bits >> 6) & 0x3f] : '=';
+            chars[index++] = remaining > 2 ? BASE64_DIGITS[bits & 0x3f] : '=';
+        }
+        return new String(chars);
+    }
+
+    // the counterpart of toBase64, null if the text is no padded base64
+    protected static byte[] fromBase64(String text) {
+        if (text.length() % 4 != 0) {
+            return null;
+        }
+
+        int padding = text.endsWith("==") ? 2 : text.endsWith("=") ? 1 : 0;
+        byte[] bytes = new byte[text.length() / 4 * 3 - padding];
+        int index = 0;
+        for (int offset = 0; offset < text.length(); offset += 4) {
+            int bits = 0;
+            for (int position = 0; position < 4; position++) {
+                char c = text.charAt(offset + position);
+                int digit = c == '=' && offset + 4 == text.length() ? 0 : getBase64Digit(c);
+                if (digit < 0) {
+                    return null;
+                }
+                bits = (bits << 6) | digit;
+            }
+
+            bytes[index++] = (byte) (bits >> 16);
+            if (index < bytes.length) {
+                bytes[index++] = (byte) (bits >> 8);
+            }
+            if (index < bytes.length) {
+                bytes[index++] = (byte) bits;
+            }
+        }
+        return bytes;
+    }
+
+    protected static String getString(byte[] bytes) {
+        try {
+            return new String(bytes, ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            return new String(bytes);
+        }
+    }
+
+    protected static byte[] getBytes(String string) {
+        try {
+            return string.getBytes(ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            return string.getBytes();
+        }
+    }
+
+    private static String hash(final String text, final String method) {
+        try {
+            final byte[] bytes = text.getBytes(ENCODING);
+            final MessageDigest mesd = MessageDigest.getInstance(method);
+            mesd.update(bytes, 0, bytes.length);
+            final byte[] hash = mesd.digest();
+            return convertToHex(hash);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static int getBase64Digit(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a' + 26;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 52;
+        }
+        if (c == '+') {
+            return 62;
+        }
+        if (c == '/') {
+            return 63;
+        }
+        return -1;
+    }
+
+    private static String convertToHex(final byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int index = 0; index < bytes.length; index++) {
+            chars[2 * index] = HEX_DIGITS[(bytes[index] >> 4) & 0x0f];
+            chars[2 * index + 1] = HEX_DIGITS[bytes[index] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    private static void appendJsonString(StringBuilder builder, String string) {
+        builder.append('"');
+        char previous = 0;
+        for (int index = 0; index < string.length(); index++) {
+            char c = string.charAt(index);
+            switch (c) {
+                case '"':
+                case '\\':
+                    builder.append('\\').append(c);
+                    break;
+                case '/':
+                    if (previous == '<') {
+                        builder.append('\\');
+                    }
+                    builder.append(c);
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || (c >= 0x80 && c < 0xa0) || (c >= 0x2000 && c < 0x2100)) {
+                        builder.append("\\u");
+                        builder.append(HEX_DIGITS[(c >> 12) & 0x0f]);
+                        builder.append(HEX_DIGITS[(c >> 8) & 0x0f]);
+                        builder.append(HEX_DIGITS[(c >> 4) & 0x0f]);
+                        builder.append(HEX_DIGITS[c & 0x0f]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+            previous = c;
+        }
+        builder.append('"');
+    }
+
+    private static class JsonReader {
+        private final String json;
+        private       int    index;
+
+        private JsonReader(String json) {
+            this.json = json;
+        }
+
+        private Map<String, String> readObject() {
+            Map<String, String> members = new HashMap<String, String>();
+            expect('{');
+            if (peek() == '}') {
+                index++;
+                return members;
+            }
+
+            while (true) {
+                String key = readString();
+                expect(':');
+                String value = readValue();
+                if (value != null) {
+                    members.put(key, value);
+                }
+
+                char c = next();
+                if (c == '}') {
+                    return members;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+
+        // null for null, objects and arrays
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                skipNested();
+                return null;
+            }
+
+            int start = index;
+            while (index < json.length() && ",}] \t\r\n".indexOf(json.charAt(index)) < 0) {
+                index++;
+            }
+            String literal = json.substring(start, index);
+            if (literal.length() == 0) {
+                throw new IllegalArgumentException();
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder builder = new StringBuilder();
+            while (true) {
+                char c = nextRaw();
+                if (c == '"') {
+                    return builder.toString();
+                }
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+
+                c = nextRaw();
+                switch (c) {
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 'u':
+                        if (index + 4 > json.length()) {
+                            throw new IllegalArgumentException();
+                        }
+                        builder.append((char) Integer.parseInt(json.substring(index, index + 4), 16));
+                        index += 4;
+                        break;
+                    default:
+                        builder.append(c);
+                }
+            }
+        }
+
+        private void skipNested() {
+            int depth = 0;
+            do {
+                char c = peek();
+                if (c == '"') {
+                    readString();
+                    continue;
+                }
+                index++;
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        // the next character that is no white space
+        private char next() {
+            char c = peek();
+            index++;
+            return c;
+        }
+
+        private char peek() {
+            while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+                index++;
+            }
+            if (index >= json.length()) {
+                throw new IllegalArgumentException();
+            }
+            return json.charAt(index);
+        }
+
+        private char nextRaw() {
+            if (index >= json.length()) {
+                throw new IllegalArgumentException();
+            }
+            return json.charAt(index++);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+//
+//  EventAggregator.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-07.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// accumulates selected events into counters, only accessed in the session thread
+public class EventAggregator {
+    // set when the server answered an aggregate package with 404, until the next launch
+    private static volatile boolean endpointMissing;
+
+    private final String[] eventTokens;
+    private final long     window;
+
+    // indexed like eventTokens
+    private final int[]  counts;
+    private final long[] amountsInMillis;  // tenths of a cent, like the revenue amount parameter
+
+    private int    totalCount;
+    private long   windowStart;
+    private long[] packageIds; // of the events in the window, the first totalCount are used
+
+    protected EventAggregator(String[] eventTokens, long window) {
+        this.eventTokens = eventTokens;
+        this.window = window;
+        this.counts = new int[eventTokens.length];
+        this.amountsInMillis = new long[eventTokens.length];
+        this.packageIds = new long[16];
+    }
+
+    // parses a comma separated list of event tokens
+    protected static EventAggregator fromString(String eventTokens, long window) {
+        if (null == eventTokens) {
+            return null;
+        }
+
+        String[] tokens = eventTokens.replaceAll("\\s", "").split(",");
+        if (tokens.length == 0 || (tokens.length == 1 && tokens[0].length() == 0)) {
+            return null;
+        }
+        return new EventAggregator(tokens, window);
+    }
+
+    protected static boolean isEndpointMissing() {
+        return endpointMissing;
+    }
+
+    protected static void setEndpointMissing() {
+        endpointMissing = true;
+    }
+
+    // the events of an aggregate package as single event and revenue packages, for servers without
+    // the aggregate endpoint; the amount of a token gets split evenly over its events; none if the
+    // aggregate package is malformed, it gets dropped then
+    protected static List<ActivityPackage> expand(ActivityPackage aggregatePackage) {
+        List<ActivityPackage> eventPackages = new ArrayList<ActivityPackage>();
+        Map<String, String> aggregateParameters = aggregatePackage.getParameters();
+        Map<String, String> counts = decodeMap(aggregateParameters.get("aggregated_counts"));
+        Map<String, String> amounts = decodeMap(aggregateParameters.get("aggregated_amounts"));
+        if (null == counts) {
+            Logger.error(String.format("Failed to read the counts of %s", aggregatePackage));
+            return eventPackages;
+        }
+
+        // parsed before any package gets built, so a malformed one leaves no partial expansion
+        String[] eventTokens = counts.keySet().toArray(new String[counts.size()]);
+        int[] eventCounts = new int[eventTokens.length];
+        long[] amountsInMillis = new long[eventTokens.length];
+        int totalCount = 0;
+        try {
+            for (int slot = 0; slot < eventTokens.length; slot++) {
+                eventCounts[slot] = Integer.parseInt(counts.get(eventTokens[slot]));
+                String amountString = null == amounts ? null : amounts.get(eventTokens[slot]);
+                amountsInMillis[slot] = null == amountString ? 0 : Long.parseLong(amountString);
+                if (eventCounts[slot] < 0) {
+                    throw new NumberFormatException("Negative count " + eventCounts[slot]);
+                }
+                totalCount += eventCounts[slot];
+            }
+        } catch (NumberFormatException e) {
+            Logger.error(String.format("Failed to read the counts of %s (%s)", aggregatePackage, e));
+            return eventPackages;
+        }
+        // the event count of the aggregate package is the one of its last event
+        int eventCount = parseInt(aggregateParameters.get("event_count"), totalCount) - totalCount;
+
+        for (int slot = 0; slot < eventTokens.length; slot++) {
+            String eventToken = eventTokens[slot];
+            int count = eventCounts[slot];
+            long amountInMillis = amountsInMillis[slot];
+
+            for (int index = 0; index < count; index++) {
+                Map<String, String> parameters = new HashMap<String, String>(aggregateParameters);
+                parameters.remove("window_start");
+                parameters.remove("aggregated_counts");
+                parameters.remove("aggregated_amounts");
+                parameters.put("event_count", Integer.toString(++eventCount));
+                parameters.put("event_token", eventToken);
+
+                ActivityPackage eventPackage = new ActivityPackage();
+                eventPackage.setPackageId(Tracing.nextPackageId());
+                eventPackage.setIdempotencyKey(IdempotencyKey.next());
+                eventPackage.setAttributeSet(aggregatePackage.getAttributeSet());
+                eventPackage.setQueuedAt(aggregatePackage.getQueuedAt());
+
+                if (0 == amountInMillis) {
+                    eventPackage.setType(ActivityPackage.PackageType.EVENT);
+                    eventPackage.setSuffix(String.format(" '%s'", eventToken));
+                } else {
+                    // the first events take the remainder, so the amounts add up to the total
+                    long eventAmount = amountInMillis / count + (index < amountInMillis % count ? 1 : 0);
+                    parameters.put("amount", Long.toString(eventAmount));
+                    eventPackage.setType(ActivityPackage.PackageType.REVENUE);
+                    eventPackage.setSuffix(String.format(Locale.US, " (%.1f cent, '%s')", eventAmount / 10.0, eventToken));
+                }
+                eventPackage.setParameters(parameters);
+                eventPackages.add(eventPackage);
+                Tracing.packageBuilt(eventPackage.getPackageId());
+            }
+        }
+        return eventPackages;
+    }
+
+    protected long getWindow() {
+        return window;
+    }
+
+    protected boolean isEmpty() {
+        return totalCount == 0;
+    }
+
+    protected int getTotalCount() {
+        return totalCount;
+    }
+
+    protected long getWindowStart() {
+        return windowStart;
+    }
+
+    // returns false if the event token is not aggregated
+    protected boolean add(String eventToken, double amountInCents, long packageId, long now) {
+        int slot = getSlot(eventToken);
+        if (slot < 0) {
+            return false;
+        }
+
+        if (totalCount == 0) {
+            windowStart = now;
+        }
+        counts[slot]++;
+        amountsInMillis[slot] += Math.round(10 * amountInCents);
+        if (totalCount == packageIds.length) {
+            long[] grownIds = new long[2 * packageIds.length];
+            System.arraycopy(packageIds, 0, grownIds, 0, totalCount);
+            packageIds = grownIds;
+        }
+        packageIds[totalCount] = packageId;
+        totalCount++;
+        return true;
+    }
+
+    protected void injectAggregates(PackageBuilder builder) {
+        Map<String, String> countMap = new HashMap<String, String>();
+        Map<String, String> amountMap = new HashMap<String, String>();
+
+        for (int slot = 0; slot < eventTokens.length; slot++) {
+            if (counts[slot] == 0) {
+                continue;
+            }
+            countMap.put(eventTokens[slot], Integer.toString(counts[slot]));
+            if (amountsInMillis[slot] != 0) {
+                amountMap.put(eventTokens[slot], Long.toString(amountsInMillis[slot]));
+            }
+        }
+
+        builder.setAggregatedCounts(countMap);
+        builder.setAggregatedAmounts(amountMap.isEmpty() ? null : amountMap);
+        builder.setAggregationWindowStart(windowStart);
+        builder.setAggregatedEventCount(totalCount);
+
+        long[] aggregatedPackageIds = new long[totalCount];
+        System.arraycopy(packageIds, 0, aggregatedPackageIds, 0, totalCount);
+        builder.setAggregatedPackageIds(aggregatedPackageIds);
+    }
+
+    protected void reset() {
+        for (int slot = 0; slot < eventTokens.length; slot++) {
+            counts[slot] = 0;
+            amountsInMillis[slot] = 0;
+        }
+        totalCount = 0;
+        windowStart = 0;
+    }
+
+    public String toString() {
+        return String.format(Locale.US, "%d tokens, window %.1f", eventTokens.length, window / 1000.0);
+    }
+
+    private static Map<String, String> decodeMap(String encodedMap) {
+        if (null == encodedMap) {
+            return null;
+        }
+        byte[] jsonBytes = Encoding.fromBase64(encodedMap);
+        if (null == jsonBytes) {
+            return null;
+        }
+        return Encoding.fromJson(Encoding.getString(jsonBytes));
+    }
+
+    private static int parseInt(String string, int defaultValue) {
+        if (null == string) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(string);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // linear search, there are only a few aggregated tokens
+    private int getSlot(String eventToken) {
+        if (null == eventToken) {
+            return -1;
+        }
+        for (int slot = 0; slot < eventTokens.length; slot++) {
+            if (eventTokens[slot].equals(eventToken)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,96 @@
+//
+//  ExecutorScheduler.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the tasks on a single daemon thread of a scheduled executor.
+ */
+public class ExecutorScheduler implements Scheduler {
+    private final ScheduledExecutorService executor;
+    private final List<PendingTask>        pendingTasks;
+
+    public ExecutorScheduler(final String name) {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pendingTasks = new ArrayList<PendingTask>();
+    }
+
+    @Override
+    public void post(Runnable task) {
+        postDelayed(task, 0);
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayInMilliseconds) {
+        PendingTask pendingTask = new PendingTask(task);
+        synchronized (pendingTasks) {
+            pendingTasks.add(pendingTask);
+        }
+        executor.schedule(pendingTask, Math.max(0, delayInMilliseconds), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        synchronized (pendingTasks) {
+            Iterator<PendingTask> iterator = pendingTasks.iterator();
+            while (iterator.hasNext()) {
+                PendingTask pendingTask = iterator.next();
+                if (pendingTask.task == task) {
+                    pendingTask.cancelled = true;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private final class PendingTask implements Runnable {
+        private final    Runnable task;
+        private volatile boolean  cancelled;
+
+        private PendingTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (pendingTasks) {
+                if (cancelled) {
+                    return;
+                }
+                pendingTasks.remove(this);
+            }
+
+            try {
+                task.run();
+            } catch (Exception e) {
+                Logger.error(String.format("Task failed (%s)", e));
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+//
+//  FailureType.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-11.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Reasons why a tracking request failed.
+ */
+public enum FailureType {
+    /** The parameters could not be encoded. The package was dropped. */
+    ENCODING,
+    /** HTTP protocol error. The package will be retried. */
+    PROTOCOL,
+    /** The request timed out. The package will be retried. */
+    TIMEOUT,
+    /** Any other network error. The package will be retried. */
+    NETWORK,
+    /** The server answered with an error status. The package was dropped after a 4xx status and will be retried after a 5xx status, up to a limit. */
+    SERVER,
+    /** Unexpected exception. The package was dropped. */
+    RUNTIME
+}
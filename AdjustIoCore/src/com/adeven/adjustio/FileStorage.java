@@ -0,0 +1,41 @@
+//
+//  FileStorage.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Stores files in a directory of the local file system.
+ */
+public class FileStorage implements Storage {
+    private final File directory;
+
+    public FileStorage(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public InputStream openInput(String name) throws IOException {
+        return new FileInputStream(new File(directory, name));
+    }
+
+    @Override
+    public OutputStream openOutput(String name) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Failed to create directory %s", directory));
+        }
+        return new FileOutputStream(new File(directory, name));
+    }
+}
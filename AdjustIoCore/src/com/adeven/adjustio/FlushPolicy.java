@@ -0,0 +1,133 @@
+//
+//  FlushPolicy.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-04.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Locale;
+
+/**
+ * Decides when buffered packages get sent.
+ * <p/>
+ * A flush is due as soon as any of the configured thresholds is reached.
+ * A threshold of zero disables it. Without any threshold every check flushes.
+ * <p/>
+ * A queue of at least the catch-up threshold, for example after a long time
+ * offline, is drained in catch-up mode: only the head of the queue file is
+ * updated after every package, and the requests can be limited to a
+ * bandwidth.
+ */
+public class FlushPolicy {
+    protected static final int DEFAULT_CATCH_UP_THRESHOLD = 100;
+
+    private int     maxPackageCount;
+    private long    maxQueueBytes;
+    private long    maxPackageAge;   // all durations in milliseconds
+    private long    maxIdleTime;
+    private boolean flushOnBackground;
+    private int     catchUpThreshold;
+    private long    catchUpBandwidth; // bytes per second
+
+    // flush buffered packages once per minute, like the timer used to
+    protected static FlushPolicy getDefault() {
+        FlushPolicy policy = new FlushPolicy();
+        policy.setMaxPackageAge(Constants.ONE_MINUTE);
+        policy.setCatchUpThreshold(DEFAULT_CATCH_UP_THRESHOLD);
+        return policy;
+    }
+
+    public void setMaxPackageCount(int maxPackageCount) {
+        this.maxPackageCount = Math.max(0, maxPackageCount);
+    }
+
+    public void setMaxQueueBytes(long maxQueueBytes) {
+        this.maxQueueBytes = Math.max(0, maxQueueBytes);
+    }
+
+    public void setMaxPackageAge(long maxPackageAge) {
+        this.maxPackageAge = Math.max(0, maxPackageAge);
+    }
+
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = Math.max(0, maxIdleTime);
+    }
+
+    public void setFlushOnBackground(boolean flushOnBackground) {
+        this.flushOnBackground = flushOnBackground;
+    }
+
+    public boolean isFlushOnBackground() {
+        return flushOnBackground;
+    }
+
+    // zero disables the catch-up mode
+    public void setCatchUpThreshold(int catchUpThreshold) {
+        this.catchUpThreshold = Math.max(0, catchUpThreshold);
+    }
+
+    // zero sends as fast as the server answers
+    public void setCatchUpBandwidth(long catchUpBandwidth) {
+        this.catchUpBandwidth = Math.max(0, catchUpBandwidth);
+    }
+
+    public long getCatchUpBandwidth() {
+        return catchUpBandwidth;
+    }
+
+    protected boolean isCatchUp(int packageCount) {
+        return isReached(packageCount, catchUpThreshold);
+    }
+
+    protected boolean hasThresholds() {
+        return maxPackageCount > 0
+            || maxQueueBytes > 0
+            || maxPackageAge > 0
+            || maxIdleTime > 0;
+    }
+
+    protected boolean isFlushDue(int packageCount, long queueBytes, long packageAge, long idleTime) {
+        if (packageCount == 0) {
+            return false;
+        }
+        if (!hasThresholds()) {
+            return true;
+        }
+
+        return isReached(packageCount, maxPackageCount)
+            || isReached(queueBytes, maxQueueBytes)
+            || isReached(packageAge, maxPackageAge)
+            || isReached(idleTime, maxIdleTime);
+    }
+
+    // milliseconds until the next time based threshold is reached, -1 if there is none
+    protected long getCheckDelay(long packageAge, long idleTime) {
+        long delay = -1;
+        if (maxPackageAge > 0) {
+            delay = Math.max(0, maxPackageAge - packageAge);
+        }
+        if (maxIdleTime > 0) {
+            long idleDelay = Math.max(0, maxIdleTime - idleTime);
+            if (delay < 0 || idleDelay < delay) {
+                delay = idleDelay;
+            }
+        }
+        return delay;
+    }
+
+    public String toString() {
+        return String.format(Locale.US,
+                             "count:%d bytes:%d age:%.1f idle:%.1f background:%b catch-up:%d (%d bytes/s)",
+                             maxPackageCount, maxQueueBytes,
+                             maxPackageAge / 1000.0, maxIdleTime / 1000.0,
+                             flushOnBackground, catchUpThreshold, catchUpBandwidth);
+    }
+
+    private static boolean isReached(long value, long threshold) {
+        return threshold > 0 && value >= threshold;
+    }
+}
@@ -0,0 +1,92 @@
+//
+//  FlushRequest.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-05.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// pending flush, counted and finished in the package handler thread
+public class FlushRequest implements Future<FlushResult> {
+    private final long                    timeout;
+    private final OnFlushFinishedListener listener;
+    private final CountDownLatch          latch;
+    private volatile FlushResult          result;
+
+    private int deliveredCount;
+    private int retriedCount;
+
+    protected FlushRequest(long timeout, OnFlushFinishedListener listener) {
+        this.timeout = timeout;
+        this.listener = listener;
+        this.latch = new CountDownLatch(1);
+    }
+
+    protected long getTimeout() {
+        return timeout;
+    }
+
+    protected void packageDelivered() {
+        deliveredCount++;
+    }
+
+    protected void packageRetried() {
+        retriedCount++;
+    }
+
+    protected void finish(int remainingCount, boolean timedOut) {
+        if (isDone()) {
+            return;
+        }
+
+        result = new FlushResult(deliveredCount, retriedCount, remainingCount, timedOut);
+        latch.countDown();
+        Logger.debug(String.format("Flush finished (%s)", result));
+
+        if (listener != null) {
+            try {
+                listener.onFlushFinished(result);
+            } catch (Exception e) {
+                Logger.error(String.format("Flush listener failed (%s)", e));
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return result != null;
+    }
+
+    @Override
+    public FlushResult get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return result;
+    }
+
+    @Override
+    public FlushResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+//
+//  FlushResult.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-05.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Locale;
+
+/**
+ * Outcome of {@link AdjustIo#flush(long)}.
+ */
+public class FlushResult {
+    private final int     deliveredCount;
+    private final int     retriedCount;
+    private final int     remainingCount;
+    private final boolean timedOut;
+
+    protected FlushResult(int deliveredCount, int retriedCount, int remainingCount, boolean timedOut) {
+        this.deliveredCount = deliveredCount;
+        this.retriedCount = retriedCount;
+        this.remainingCount = remainingCount;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return The number of packages that were sent and removed from the queue.
+     */
+    public int getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return The number of failed requests that will be retried.
+     */
+    public int getRetriedCount() {
+        return retriedCount;
+    }
+
+    /**
+     * @return The number of packages still queued when the flush finished.
+     */
+    public int getRemainingCount() {
+        return remainingCount;
+    }
+
+    /**
+     * @return Whether the timeout expired before the queue was empty.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public String toString() {
+        return String.format(Locale.US,
+                             "delivered:%d retried:%d remaining:%d%s",
+                             deliveredCount, retriedCount, remainingCount,
+                             timedOut ? " (timed out)" : "");
+    }
+}
@@ -0,0 +1,95 @@
+//
+//  HistogramSnapshot.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-11.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Locale;
+
+/**
+ * Immutable copy of a latency histogram. All values are in milliseconds.
+ */
+public class HistogramSnapshot {
+    private final long[] bucketBounds;
+    private final long[] bucketCounts;
+    private final long   count;
+    private final long   sum;
+    private final long   max;
+
+    protected HistogramSnapshot(long[] bucketBounds, long[] bucketCounts, long sum, long max) {
+        this.bucketBounds = bucketBounds;
+        this.bucketCounts = bucketCounts;
+        this.sum = sum;
+        this.max = max;
+
+        long count = 0;
+        for (long bucketCount : bucketCounts) {
+            count += bucketCount;
+        }
+        this.count = count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        if (count == 0) {
+            return 0;
+        }
+        return sum / (double) count;
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The upper bound of the bucket containing the percentile, at most the maximum.
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < bucketBounds.length; bucket++) {
+            seen += bucketCounts[bucket];
+            if (seen >= rank) {
+                return Math.min(bucketBounds[bucket], max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return The upper bounds of all buckets but the last one, which is unbounded.
+     */
+    public long[] getBucketBounds() {
+        return bucketBounds.clone();
+    }
+
+    /**
+     * @return The counts per bucket, one more than there are bounds.
+     */
+    public long[] getBucketCounts() {
+        return bucketCounts.clone();
+    }
+
+    public String toString() {
+        return String.format(Locale.US,
+                             "n:%d p50:%d p99:%d max:%d",
+                             count, getPercentile(50), getPercentile(99), max);
+    }
+}
@@ -0,0 +1,42 @@
+//
+//  IdempotencyKey.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates the keys that let the server recognize a package it already
+ * received, so a package can be sent again whenever the response got lost.
+ * <p/>
+ * A key is a random prefix per process followed by a counter, for example
+ * {@code 3f9c0a1b2c3d4e5f-1a}. The 64 random bits keep the keys of different
+ * launches and devices apart. Thread safe.
+ */
+public class IdempotencyKey {
+    protected static final String HEADER = "Idempotency-Key";
+
+    private static final String     prefix      = createPrefix();
+    private static final AtomicLong lastCounter = new AtomicLong();
+
+    protected static String next() {
+        return prefix + Long.toString(lastCounter.incrementAndGet(), Character.MAX_RADIX);
+    }
+
+    private static String createPrefix() {
+        long random = new SecureRandom().nextLong();
+        String hex = Long.toHexString(random);
+        StringBuilder builder = new StringBuilder(17);
+        for (int padding = hex.length(); padding < 16; padding++) {
+            builder.append('0');
+        }
+        return builder.append(hex).append('-').toString();
+    }
+}
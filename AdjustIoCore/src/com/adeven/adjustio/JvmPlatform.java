@@ -0,0 +1,66 @@
+//
+//  JvmPlatform.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the tracking pipeline on a plain JVM, for benchmarks, profiling and tests.
+ */
+public class JvmPlatform implements Platform {
+    private final Storage             storage;
+    private final Clock               clock;
+    private final String              baseUrl;
+    private final Map<String, String> deviceData;
+
+    public JvmPlatform(File directory) {
+        this(new FileStorage(directory), Clock.SYSTEM, null);
+    }
+
+    // baseUrl replaces Constants.BASE_URL, null to keep it
+    public JvmPlatform(Storage storage, Clock clock, String baseUrl) {
+        this.storage = storage;
+        this.clock = clock;
+        this.baseUrl = baseUrl;
+
+        Map<String, String> deviceData = new HashMap<String, String>();
+        deviceData.put("os_name", System.getProperty("os.name"));
+        deviceData.put("os_version", System.getProperty("os.version"));
+        this.deviceData = Collections.unmodifiableMap(deviceData);
+    }
+
+    @Override
+    public Storage getStorage() {
+        return storage;
+    }
+
+    @Override
+    public Clock getClock() {
+        return clock;
+    }
+
+    @Override
+    public Scheduler newScheduler(String name) {
+        return new ExecutorScheduler(name);
+    }
+
+    @Override
+    public Transport newTransport() {
+        return new UrlConnectionTransport(baseUrl);
+    }
+
+    @Override
+    public Map<String, String> getDeviceData() {
+        return deviceData;
+    }
+}
@@ -0,0 +1,64 @@
+//
+//  LatencyHistogram.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-11.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// latencies in milliseconds counted in fixed buckets, lock free and without allocations
+public class LatencyHistogram {
+    // upper bounds in milliseconds, the last bucket takes everything above
+    private static final long[] BUCKET_BOUNDS = {
+        10, 25, 50, 100, 250, 500,
+        1000, 2500, 5000, 10000, 30000, 60000,
+        5 * 60000, 60 * 60000, 24 * 60 * 60000
+    };
+
+    private final AtomicLongArray counts;
+    private final AtomicLong      sum;
+    private final AtomicLong      max;
+
+    protected LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    protected void record(long latency) {
+        if (latency < 0) {
+            return;
+        }
+
+        counts.incrementAndGet(getBucket(latency));
+        sum.addAndGet(latency);
+
+        long currentMax = max.get();
+        while (latency > currentMax && !max.compareAndSet(currentMax, latency)) {
+            currentMax = max.get();
+        }
+    }
+
+    protected HistogramSnapshot snapshot() {
+        long[] bucketCounts = new long[counts.length()];
+        for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+            bucketCounts[bucket] = counts.get(bucket);
+        }
+        return new HistogramSnapshot(BUCKET_BOUNDS, bucketCounts, sum.get(), max.get());
+    }
+
+    private static int getBucket(long latency) {
+        for (int bucket = 0; bucket < BUCKET_BOUNDS.length; bucket++) {
+            if (latency <= BUCKET_BOUNDS[bucket]) {
+                return bucket;
+            }
+        }
+        return BUCKET_BOUNDS.length;
+    }
+}
@@ -0,0 +1,17 @@
+//
+//  LogSink.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Receives the log messages that pass the log level.
+ */
+public interface LogSink {
+    void log(Logger.LogLevel logLevel, String message);
+}
@@ -11,14 +11,11 @@ package com.adeven.adjustio;
 
 import java.util.Locale;
 
-import android.util.Log;
-
-import static com.adeven.adjustio.Constants.LOGTAG;
-
 public class Logger {
 
+    // same values as the priorities of android.util.Log
     public enum LogLevel {
-        VERBOSE(Log.VERBOSE), DEBUG(Log.DEBUG), INFO(Log.INFO), WARN(Log.WARN), ERROR(Log.ERROR), ASSERT(Log.ASSERT);
+        VERBOSE(2), DEBUG(3), INFO(4), WARN(5), ERROR(6), ASSERT(7);
         private final int androidLogLevel;
 
         LogLevel(final int androidLogLevel) {
@@ -31,6 +28,11 @@ public class Logger {
     }
 
     private static LogLevel logLevel = LogLevel.INFO;
+    private static LogSink  logSink  = new ConsoleLogSink();
+
+    public static void setLogSink(LogSink logSink) {
+        Logger.logSink = logSink;
+    }
 
     public static void setLogLevel(LogLevel logLevel) {
         Logger.logLevel = logLevel;
@@ -46,37 +48,38 @@ public class Logger {
         }
     }
 
+    // to skip building messages that would not be logged
+    public static boolean isLoggable(LogLevel messageLevel) {
+        return logLevel.androidLogLevel <= messageLevel.androidLogLevel;
+    }
+
     public static void verbose(String message) {
-        if (logLevel.androidLogLevel <= Log.VERBOSE) {
-            Log.v(LOGTAG, message);
-        }
+        log(LogLevel.VERBOSE, message);
     }
 
     public static void debug(String message) {
-        if (logLevel.androidLogLevel <= Log.DEBUG) {
-            Log.d(LOGTAG, message);
-        }
+        log(LogLevel.DEBUG, message);
     }
 
     public static void info(String message) {
-        if (logLevel.androidLogLevel <= Log.INFO) {
-            Log.i(LOGTAG, message);
-        }
+        log(LogLevel.INFO, message);
     }
 
     public static void warn(String message) {
-        if (logLevel.androidLogLevel <= Log.WARN) {
-            Log.w(LOGTAG, message);
-        }
+        log(LogLevel.WARN, message);
     }
 
     public static void error(String message) {
-        if (logLevel.androidLogLevel <= Log.ERROR) {
-            Log.e(LOGTAG, message);
-        }
+        log(LogLevel.ERROR, message);
     }
 
     public static void Assert(String message) {
-        Log.println(Log.ASSERT, LOGTAG, message);
+        logSink.log(LogLevel.ASSERT, message);
+    }
+
+    private static void log(LogLevel messageLevel, String message) {
+        if (isLoggable(messageLevel)) {
+            logSink.log(messageLevel, message);
+        }
     }
 }
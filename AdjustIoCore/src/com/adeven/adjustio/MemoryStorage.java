@@ -0,0 +1,56 @@
+//
+//  MemoryStorage.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps files in memory, for benchmarks and tests on the JVM.
+ * The content of a file is replaced when its output stream gets closed.
+ */
+public class MemoryStorage implements Storage {
+    private final Map<String, byte[]> files = new HashMap<String, byte[]>();
+
+    @Override
+    public synchronized InputStream openInput(String name) throws IOException {
+        byte[] content = files.get(name);
+        if (null == content) {
+            throw new FileNotFoundException(name);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public OutputStream openOutput(final String name) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                setContent(name, toByteArray());
+            }
+        };
+    }
+
+    public synchronized long getByteCount(String name) {
+        byte[] content = files.get(name);
+        return content == null ? 0 : content.length;
+    }
+
+    private synchronized void setContent(String name, byte[] content) {
+        files.put(name, content);
+    }
+}
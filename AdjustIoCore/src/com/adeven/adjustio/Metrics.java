@@ -0,0 +1,187 @@
+//
+//  Metrics.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-11.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// process wide counters of the tracking pipeline, cheap enough to be always on
+public class Metrics {
+    private static final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private static final LatencyHistogram requestLatency  = new LatencyHistogram();
+
+    private static final AtomicInteger queueDepth    = new AtomicInteger();
+    private static final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private static final AtomicLong packageQueueBytesWritten  = new AtomicLong();
+    private static final AtomicLong activityStateBytesWritten = new AtomicLong();
+    private static final AtomicLong requestsSent              = new AtomicLong();
+    private static final AtomicLong bytesSent                 = new AtomicLong();
+    private static final AtomicLong packagesDelivered         = new AtomicLong();
+    private static final AtomicLong retries                   = new AtomicLong();
+    private static final AtomicLong radioWakeUps              = new AtomicLong();
+    private static final AtomicLong throttledActivities       = new AtomicLong();
+    private static final AtomicLong droppedActivities         = new AtomicLong();
+    private static final AtomicLong coalescedTransitions      = new AtomicLong();
+    private static final AtomicLong fullTlsHandshakes         = new AtomicLong();
+    private static final AtomicLong resumedTlsHandshakes      = new AtomicLong();
+    private static final AtomicLong requestTimeout            = new AtomicLong(-1);
+    private static final AtomicLong circuitOpenings           = new AtomicLong();
+    private static final AtomicLong shortCircuitedRequests    = new AtomicLong();
+    private static final AtomicLong startupStartedAt          = new AtomicLong();
+    private static final AtomicLong startupTime               = new AtomicLong(-1);
+
+    private static volatile CircuitState circuitState = CircuitState.CLOSED;
+
+    private static final AtomicLongArray failures = new AtomicLongArray(FailureType.values().length);
+
+    private static final long startedAt = System.currentTimeMillis();
+
+    protected static void setQueueDepth(int depth) {
+        queueDepth.set(depth);
+
+        int currentMax = maxQueueDepth.get();
+        while (depth > currentMax && !maxQueueDepth.compareAndSet(currentMax, depth)) {
+            currentMax = maxQueueDepth.get();
+        }
+    }
+
+    protected static void packageQueueWritten(long byteCount) {
+        packageQueueBytesWritten.addAndGet(byteCount);
+    }
+
+    protected static void activityStateWritten(long byteCount) {
+        activityStateBytesWritten.addAndGet(byteCount);
+    }
+
+    protected static void requestSent(long byteCount) {
+        requestsSent.incrementAndGet();
+        bytesSent.addAndGet(byteCount);
+    }
+
+    protected static void requestFinished(long latency) {
+        requestLatency.record(latency);
+    }
+
+    // packages written by older versions have no queue time
+    protected static void packageDelivered(long queuedAt) {
+        packagesDelivered.incrementAndGet();
+        if (queuedAt > 0) {
+            deliveryLatency.record(System.currentTimeMillis() - queuedAt);
+        }
+    }
+
+    protected static void requestFailed(FailureType failureType, boolean willRetry) {
+        failures.incrementAndGet(failureType.ordinal());
+        if (willRetry) {
+            retries.incrementAndGet();
+        }
+    }
+
+    // returns the wake-ups per minute like MetricsSnapshot.getRadioWakeUpsPerMinute, without a snapshot
+    protected static double radioWokeUp() {
+        long count = radioWakeUps.incrementAndGet();
+        long uptime = System.currentTimeMillis() - startedAt;
+        return count / (Math.max(uptime, Constants.ONE_MINUTE) / (double) Constants.ONE_MINUTE);
+    }
+
+    protected static long activityThrottled() {
+        return throttledActivities.incrementAndGet();
+    }
+
+    protected static long activityDropped() {
+        return droppedActivities.incrementAndGet();
+    }
+
+    protected static void transitionCoalesced() {
+        coalescedTransitions.incrementAndGet();
+    }
+
+    protected static void tlsHandshakeCompleted(boolean resumed) {
+        if (resumed) {
+            resumedTlsHandshakes.incrementAndGet();
+        } else {
+            fullTlsHandshakes.incrementAndGet();
+        }
+    }
+
+    protected static void requestTimeoutChanged(int timeout) {
+        requestTimeout.set(timeout);
+    }
+
+    protected static void circuitStateChanged(CircuitState state) {
+        circuitState = state;
+        if (state == CircuitState.OPEN) {
+            circuitOpenings.incrementAndGet();
+        }
+    }
+
+    protected static void requestShortCircuited() {
+        shortCircuitedRequests.incrementAndGet();
+    }
+
+    // the activity handler got created, only the first call counts
+    protected static void startupStarted() {
+        startupStartedAt.compareAndSet(0, System.currentTimeMillis());
+    }
+
+    // a package got added to the queue, the first one ends the startup
+    protected static void packageQueued(long queuedAt) {
+        long startedAt = startupStartedAt.get();
+        if (startedAt > 0 && startupTime.get() < 0) {
+            startupTime.compareAndSet(-1, queuedAt - startedAt);
+        }
+    }
+
+    protected static long getThrottledActivities() {
+        return throttledActivities.get();
+    }
+
+    protected static long getDroppedActivities() {
+        return droppedActivities.get();
+    }
+
+    protected static int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    protected static MetricsSnapshot snapshot() {
+        long[] failureCounts = new long[failures.length()];
+        for (int index = 0; index < failureCounts.length; index++) {
+            failureCounts[index] = failures.get(index);
+        }
+
+        return new MetricsSnapshot(
+            System.currentTimeMillis() - startedAt,
+            deliveryLatency.snapshot(),
+            requestLatency.snapshot(),
+            queueDepth.get(),
+            maxQueueDepth.get(),
+            packageQueueBytesWritten.get(),
+            activityStateBytesWritten.get(),
+            requestsSent.get(),
+            bytesSent.get(),
+            packagesDelivered.get(),
+            retries.get(),
+            radioWakeUps.get(),
+            throttledActivities.get(),
+            droppedActivities.get(),
+            coalescedTransitions.get(),
+            fullTlsHandshakes.get(),
+            resumedTlsHandshakes.get(),
+            requestTimeout.get(),
+            circuitState,
+            circuitOpenings.get(),
+            shortCircuitedRequests.get(),
+            startupTime.get(),
+            failureCounts);
+    }
+}
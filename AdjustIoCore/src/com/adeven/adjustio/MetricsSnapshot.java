@@ -0,0 +1,250 @@
+//
+//  MetricsSnapshot.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-11.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Locale;
+
+/**
+ * Immutable copy of the AdjustIo metrics, see {@link AdjustIo#getMetrics()}.
+ * <p/>
+ * Counters are totals since the process started. Byte counts are in bytes,
+ * durations in milliseconds.
+ */
+public class MetricsSnapshot {
+    private final long              uptime;
+    private final HistogramSnapshot deliveryLatency;
+    private final HistogramSnapshot requestLatency;
+    private final int               queueDepth;
+    private final int               maxQueueDepth;
+    private final long              packageQueueBytesWritten;
+    private final long              activityStateBytesWritten;
+    private final long              requestsSent;
+    private final long              bytesSent;
+    private final long              packagesDelivered;
+    private final long              retries;
+    private final long              radioWakeUps;
+    private final long              throttledActivities;
+    private final long              droppedActivities;
+    private final long              coalescedTransitions;
+    private final long              fullTlsHandshakes;
+    private final long              resumedTlsHandshakes;
+    private final long              requestTimeout;
+    private final CircuitState      circuitState;
+    private final long              circuitOpenings;
+    private final long              shortCircuitedRequests;
+    private final long              startupTime;
+    private final long[]            failures;
+
+    protected MetricsSnapshot(long uptime,
+                              HistogramSnapshot deliveryLatency,
+                              HistogramSnapshot requestLatency,
+                              int queueDepth,
+                              int maxQueueDepth,
+                              long packageQueueBytesWritten,
+                              long activityStateBytesWritten,
+                              long requestsSent,
+                              long bytesSent,
+                              long packagesDelivered,
+                              long retries,
+                              long radioWakeUps,
+                              long throttledActivities,
+                              long droppedActivities,
+                              long coalescedTransitions,
+                              long fullTlsHandshakes,
+                              long resumedTlsHandshakes,
+                              long requestTimeout,
+                              CircuitState circuitState,
+                              long circuitOpenings,
+                              long shortCircuitedRequests,
+                              long startupTime,
+                              long[] failures) {
+        this.uptime = uptime;
+        this.deliveryLatency = deliveryLatency;
+        this.requestLatency = requestLatency;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.packageQueueBytesWritten = packageQueueBytesWritten;
+        this.activityStateBytesWritten = activityStateBytesWritten;
+        this.requestsSent = requestsSent;
+        this.bytesSent = bytesSent;
+        this.packagesDelivered = packagesDelivered;
+        this.retries = retries;
+        this.radioWakeUps = radioWakeUps;
+        this.throttledActivities = throttledActivities;
+        this.droppedActivities = droppedActivities;
+        this.coalescedTransitions = coalescedTransitions;
+        this.fullTlsHandshakes = fullTlsHandshakes;
+        this.resumedTlsHandshakes = resumedTlsHandshakes;
+        this.requestTimeout = requestTimeout;
+        this.circuitState = circuitState;
+        this.circuitOpenings = circuitOpenings;
+        this.shortCircuitedRequests = shortCircuitedRequests;
+        this.startupTime = startupTime;
+        this.failures = failures;
+    }
+
+    /**
+     * @return Time since the metrics were started.
+     */
+    public long getUptime() {
+        return uptime;
+    }
+
+    /**
+     * @return Time from adding a package to the queue until the server acknowledged it.
+     */
+    public HistogramSnapshot getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    /**
+     * @return Duration of single tracking requests, including failed ones.
+     */
+    public HistogramSnapshot getRequestLatency() {
+        return requestLatency;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getPackageQueueBytesWritten() {
+        return packageQueueBytesWritten;
+    }
+
+    public long getActivityStateBytesWritten() {
+        return activityStateBytesWritten;
+    }
+
+    public long getRequestsSent() {
+        return requestsSent;
+    }
+
+    /**
+     * @return Bytes of the URLs and request bodies sent.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getPackagesDelivered() {
+        return packagesDelivered;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return Requests that started after the radio was idle for a while.
+     */
+    public long getRadioWakeUps() {
+        return radioWakeUps;
+    }
+
+    public double getRadioWakeUpsPerMinute() {
+        double minutes = Math.max(uptime, Constants.ONE_MINUTE) / (double) Constants.ONE_MINUTE;
+        return radioWakeUps / minutes;
+    }
+
+    public long getThrottledActivities() {
+        return throttledActivities;
+    }
+
+    public long getDroppedActivities() {
+        return droppedActivities;
+    }
+
+    /**
+     * @return Pauses that were followed by a resume within the grace window,
+     *         for example when switching between two activities.
+     */
+    public long getCoalescedTransitions() {
+        return coalescedTransitions;
+    }
+
+    /**
+     * @return TLS handshakes that negotiated a new session.
+     */
+    public long getFullTlsHandshakes() {
+        return fullTlsHandshakes;
+    }
+
+    /**
+     * @return TLS handshakes that resumed an earlier session, which saves a
+     *         round trip and the key exchange.
+     */
+    public long getResumedTlsHandshakes() {
+        return resumedTlsHandshakes;
+    }
+
+    /**
+     * @return The current timeout for connecting to the tracking server and
+     *         for every read, derived from the measured request durations,
+     *         or -1 before the request thread started.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @return Whether requests are sent to the tracking server right now, or
+     *         held back because too many of them failed recently.
+     */
+    public CircuitState getCircuitState() {
+        return circuitState;
+    }
+
+    /**
+     * @return How often sending was stopped because too many requests failed.
+     */
+    public long getCircuitOpenings() {
+        return circuitOpenings;
+    }
+
+    /**
+     * @return Send attempts that were skipped without network access while
+     *         the circuit was open.
+     */
+    public long getShortCircuitedRequests() {
+        return shortCircuitedRequests;
+    }
+
+    /**
+     * @return Time from the first call of AdjustIo until the first package
+     *         was added to the queue, or -1 if that did not happen yet.
+     */
+    public long getStartupTime() {
+        return startupTime;
+    }
+
+    public long getFailures(FailureType failureType) {
+        return failures[failureType.ordinal()];
+    }
+
+    public long getFailures() {
+        long total = 0;
+        for (long count : failures) {
+            total += count;
+        }
+        return total;
+    }
+
+    public String toString() {
+        return String.format(Locale.US,
+                             "queue:%d/%d sent:%d (%d bytes) delivered:%d retries:%d failures:%d timeout:%dms circuit:%s wake-ups:%.2f/min delivery:[%s]",
+                             queueDepth, maxQueueDepth, requestsSent, bytesSent, packagesDelivered,
+                             retries, getFailures(), requestTimeout, circuitState, getRadioWakeUpsPerMinute(), deliveryLatency);
+    }
+}
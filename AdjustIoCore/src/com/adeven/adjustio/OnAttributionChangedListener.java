@@ -0,0 +1,20 @@
+//
+//  OnAttributionChangedListener.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Gets notified when the server attributes the install to another tracker
+ * than before, see {@link AdjustIo#setOnAttributionChangedListener(OnAttributionChangedListener)}.
+ * <p/>
+ * The callback runs on a background thread of AdjustIo. Don't do any heavy work in it.
+ */
+public interface OnAttributionChangedListener {
+    void onAttributionChanged(Attribution attribution);
+}
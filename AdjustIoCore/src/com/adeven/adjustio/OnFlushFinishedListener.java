@@ -0,0 +1,19 @@
+//
+//  OnFlushFinishedListener.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-05.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Gets notified when a flush started with {@link AdjustIo#flush(long, OnFlushFinishedListener)} is done.
+ * <p/>
+ * The callback runs on a background thread of AdjustIo. Don't do any heavy work in it.
+ */
+public interface OnFlushFinishedListener {
+    void onFlushFinished(FlushResult result);
+}
@@ -9,19 +9,18 @@
 
 package com.adeven.adjustio;
 
-import android.text.TextUtils;
-import android.util.Base64;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
-import org.json.JSONObject;
 
 public class PackageBuilder {
 
     private static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'Z";
 
+    private long packageId;
+
     // general
     private String appToken;
     private String macSha1;
@@ -32,6 +31,8 @@ public class PackageBuilder {
     private String clientSdk;
     private String environment;
 
+    private AttributeSet attributeSet;
+
     // sessions
     private int    sessionCount;
     private int    subsessionCount;
@@ -48,8 +49,23 @@ public class PackageBuilder {
     private double              amountInCents;
     private Map<String, String> callbackParameters;
 
+    // aggregates
+    private int                 aggregatedEventCount;
+    private long                aggregationWindowStart;
+    private Map<String, String> aggregatedCounts;
+    private Map<String, String> aggregatedAmounts;
+    private long[]              aggregatedPackageIds;
+
     private static SimpleDateFormat dateFormat;
 
+    public long getPackageId() {
+        return packageId;
+    }
+
+    public void setPackageId(long packageId) {
+        this.packageId = packageId;
+    }
+
     public void setAppToken(String appToken) {
         this.appToken = appToken;
     }
@@ -82,6 +98,11 @@ public class PackageBuilder {
         this.environment = environment;
     }
 
+    // use a shared attribute set instead of the general attributes above
+    public void setAttributeSet(AttributeSet attributeSet) {
+        this.attributeSet = attributeSet;
+    }
+
 
     public void setSessionCount(int sessionCount) {
         this.sessionCount = sessionCount;
@@ -139,6 +160,26 @@ public class PackageBuilder {
         this.callbackParameters = callbackParameters;
     }
 
+    public void setAggregatedEventCount(int aggregatedEventCount) {
+        this.aggregatedEventCount = aggregatedEventCount;
+    }
+
+    public void setAggregationWindowStart(long aggregationWindowStart) {
+        this.aggregationWindowStart = aggregationWindowStart;
+    }
+
+    public void setAggregatedPackageIds(long[] aggregatedPackageIds) {
+        this.aggregatedPackageIds = aggregatedPackageIds;
+    }
+
+    public void setAggregatedCounts(Map<String, String> aggregatedCounts) {
+        this.aggregatedCounts = aggregatedCounts;
+    }
+
+    public void setAggregatedAmounts(Map<String, String> aggregatedAmounts) {
+        this.aggregatedAmounts = aggregatedAmounts;
+    }
+
     public boolean isValidForEvent() {
         if (null == eventToken) {
             Logger.error("Missing Event Token");
@@ -177,6 +218,7 @@ public class PackageBuilder {
         sessionPackage.setSuffix("");
         sessionPackage.setParameters(parameters);
 
+        Tracing.packageBuilt(packageId);
         return sessionPackage;
     }
 
@@ -189,6 +231,7 @@ public class PackageBuilder {
         eventPackage.setSuffix(getEventSuffix());
         eventPackage.setParameters(parameters);
 
+        Tracing.packageBuilt(packageId);
         return eventPackage;
     }
 
@@ -202,21 +245,35 @@ public class PackageBuilder {
         revenuePackage.setSuffix(getRevenueSuffix());
         revenuePackage.setParameters(parameters);
 
+        Tracing.packageBuilt(packageId);
         return revenuePackage;
     }
 
-    private ActivityPackage getDefaultActivityPackage() {
-        ActivityPackage activityPackage = new ActivityPackage();
-        activityPackage.setUserAgent(userAgent);
-        activityPackage.setClientSdk(clientSdk);
-        return activityPackage;
+    protected ActivityPackage buildAggregatePackage() {
+        Map<String, String> parameters = getDefaultParameters();
+        addInt(parameters, "event_count", eventCount);
+        addDate(parameters, "window_start", aggregationWindowStart);
+        addMap(parameters, "aggregated_counts", aggregatedCounts);
+        addMap(parameters, "aggregated_amounts", aggregatedAmounts);
+
+        ActivityPackage aggregatePackage = getDefaultActivityPackage();
+        aggregatePackage.setType(ActivityPackage.PackageType.AGGREGATE);
+        aggregatePackage.setSuffix(String.format(Locale.US, " (%d events)", aggregatedEventCount));
+        aggregatePackage.setParameters(parameters);
+        aggregatePackage.setAggregatedPackageIds(aggregatedPackageIds);
+
+        Tracing.packageBuilt(packageId);
+        // the aggregated events were accepted with their own IDs, their package is this one
+        if (aggregatedPackageIds != null) {
+            for (long aggregatedPackageId : aggregatedPackageIds) {
+                Tracing.packageBuilt(aggregatedPackageId);
+            }
+        }
+        return aggregatePackage;
     }
 
-    private Map<String, String> getDefaultParameters() {
+    protected AttributeSet buildAttributeSet() {
         Map<String, String> parameters = new HashMap<String, String>();
-
-        // general
-        addDate(parameters, "created_at", createdAt);
         addString(parameters, "app_token", appToken);
         addString(parameters, "mac_sha1", macSha1);
         addString(parameters, "mac_md5", macShortMd5);
@@ -224,6 +281,27 @@ public class PackageBuilder {
         addString(parameters, "fb_id", fbAttributionId);
         addString(parameters, "environment", environment);
 
+        return new AttributeSet(userAgent, clientSdk, parameters);
+    }
+
+    private ActivityPackage getDefaultActivityPackage() {
+        if (null == attributeSet) {
+            attributeSet = buildAttributeSet();
+        }
+
+        ActivityPackage activityPackage = new ActivityPackage();
+        activityPackage.setPackageId(packageId);
+        activityPackage.setIdempotencyKey(IdempotencyKey.next());
+        activityPackage.setAttributeSet(attributeSet);
+        return activityPackage;
+    }
+
+    // general attributes are in the attribute set
+    private Map<String, String> getDefaultParameters() {
+        Map<String, String> parameters = new HashMap<String, String>();
+
+        addDate(parameters, "created_at", createdAt);
+
         // session related (used for events as well)
         addInt(parameters, "session_count", sessionCount);
         addInt(parameters, "subsession_count", subsessionCount);
@@ -258,7 +336,7 @@ public class PackageBuilder {
     }
 
     private void addString(Map<String, String> parameters, String key, String value) {
-        if (TextUtils.isEmpty(value)) {
+        if (null == value || value.length() == 0) {
             return;
         }
 
@@ -298,9 +376,8 @@ public class PackageBuilder {
             return;
         }
 
-        JSONObject jsonObject = new JSONObject(map);
-        byte[] jsonBytes = jsonObject.toString().getBytes();
-        String encodedMap = Base64.encodeToString(jsonBytes, Base64.NO_WRAP);
+        byte[] jsonBytes = Encoding.getBytes(Encoding.toJson(map));
+        String encodedMap = Encoding.toBase64(jsonBytes);
 
         addString(parameters, key, encodedMap);
     }
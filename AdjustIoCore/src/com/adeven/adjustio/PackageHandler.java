@@ -0,0 +1,461 @@
+//
+//  PackageHandler.java
+//  AdjustIo
+//
+//  Created by Christian Wellenbrock on 2013-06-25.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// persistent
+public class PackageHandler {
+    private static final long RADIO_IDLE_INTERVAL  = 10 * Constants.ONE_SECOND;
+    private static final long FLUSH_RETRY_INTERVAL = Constants.ONE_SECOND;
+    private static final int  FLUSH_PARALLELISM    = 4; // requests in flight during a flush
+
+    private final Scheduler             scheduler;
+    private final Platform              platform;
+    private final Clock                 clock;
+    private       RequestHandler        requestHandler; // the first one, also connects ahead of time
+    private       List<RequestHandler>  idleRequestHandlers;
+    private       List<ActivityPackage> sendingPackages;
+    private       PackageQueue          packageQueue;
+    private volatile boolean            paused; // written by the activity thread
+    private       boolean            flushing;
+    private final FlushPolicy        flushPolicy;
+    private final List<FlushRequest> flushRequests;
+    private final CircuitBreaker     circuitBreaker;
+    private final AttributionCache   attributionCache; // null if the attribution is not needed
+
+    // flush policy and radio usage, only accessed in the queue thread
+    private long lastAddedAt;
+    private long lastRequestFinishedAt;
+    private long retryAfter; // no parallel requests before this time after a failed one
+
+    // catch-up mode, only accessed in the queue thread
+    private boolean     catchingUp;
+    private TokenBucket bandwidthBucket; // created with the first capped request
+
+    private final Runnable sendFirstTask = new Runnable() {
+        @Override
+        public void run() {
+            sendFirstInternal();
+        }
+    };
+
+    private final Runnable checkFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            checkFlushInternal();
+        }
+    };
+
+    protected PackageHandler(Platform platform, FlushPolicy flushPolicy) {
+        this(platform, flushPolicy, null);
+    }
+
+    protected PackageHandler(Platform platform, FlushPolicy flushPolicy, AttributionCache attributionCache) {
+        this.scheduler = platform.newScheduler(Constants.LOGTAG);
+        this.platform = platform;
+        this.clock = platform.getClock();
+
+        this.flushPolicy = flushPolicy;
+        this.flushRequests = new ArrayList<FlushRequest>();
+        this.circuitBreaker = new CircuitBreaker(clock);
+        this.attributionCache = attributionCache;
+
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                initInternal();
+            }
+        });
+    }
+
+    // add a package to the queue, trigger sending
+    protected void addPackage(final ActivityPackage pack) {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                addInternal(pack);
+            }
+        });
+    }
+
+    // try to send the oldest package
+    protected void sendFirstPackage() {
+        scheduler.post(sendFirstTask);
+    }
+
+    // send the oldest package if the flush policy says so (buffered packages)
+    protected void checkFlushPolicy() {
+        scheduler.post(checkFlushTask);
+    }
+
+    // open a connection to the server in the background, so the next package goes out faster
+    protected void connect() {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                requestHandler.connect();
+            }
+        });
+    }
+
+    // send all packages, even while paused, until the queue is empty or a request fails
+    protected void flushPackages() {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                flushInternal();
+            }
+        });
+    }
+
+    // send all packages until the queue is empty or the timeout of the request expires
+    protected void flushPackages(final FlushRequest flushRequest) {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                flushRequestInternal(flushRequest);
+            }
+        });
+    }
+
+    // remove the sent package and try to send the next one
+    // (after success or possibly permanent failure)
+    protected void sendNextPackage(final RequestHandler requestHandler, final ActivityPackage activityPackage) {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                sendNextInternal(requestHandler, activityPackage);
+            }
+        });
+    }
+
+    // replace the sent package, an aggregate the server does not support, with its single events
+    protected void expandPackage(final RequestHandler requestHandler, final ActivityPackage activityPackage) {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                expandInternal(requestHandler, activityPackage);
+            }
+        });
+    }
+
+    // close the package to retry in the future (after temporary failure)
+    protected void closePackage(final RequestHandler requestHandler, final ActivityPackage activityPackage,
+                                final boolean countServerError) {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                closeInternal(requestHandler, activityPackage, countServerError);
+            }
+        });
+    }
+
+    // interrupt the sending loop after the current request has finished
+    protected void pauseSending() {
+        paused = true;
+    }
+
+    // allow sending requests again
+    protected void resumeSending() {
+        paused = false;
+    }
+
+    // internal methods run in dedicated queue thread
+
+    private void initInternal() {
+        requestHandler = new RequestHandler(this, platform, circuitBreaker, attributionCache);
+        idleRequestHandlers = new ArrayList<RequestHandler>(FLUSH_PARALLELISM);
+        idleRequestHandlers.add(requestHandler);
+        sendingPackages = new ArrayList<ActivityPackage>(FLUSH_PARALLELISM);
+
+        packageQueue = new PackageQueue(platform.getStorage());
+        packageQueue.read();
+        Metrics.setQueueDepth(packageQueue.size());
+    }
+
+    private void addInternal(ActivityPackage newPackage) {
+        long now = clock.currentTimeMillis();
+        newPackage.setQueuedAt(now);
+        lastAddedAt = now;
+
+        packageQueue.add(newPackage);
+        Metrics.setQueueDepth(packageQueue.size());
+        Metrics.packageQueued(now);
+        Logger.debug(String.format(Locale.US, "Added package %d (%s)", packageQueue.size(), newPackage));
+        Logger.verbose(newPackage.getExtendedString());
+
+        packageQueue.write();
+        Tracing.packagePersisted(newPackage.getPackageId());
+        if (newPackage.getAggregatedPackageIds() != null) {
+            for (long aggregatedPackageId : newPackage.getAggregatedPackageIds()) {
+                Tracing.packagePersisted(aggregatedPackageId);
+            }
+        }
+    }
+
+    private void sendFirstInternal() {
+        if (packageQueue.isEmpty()) {
+            flushing = false;
+            finishFlushRequests();
+            return;
+        }
+
+        if (paused && !flushing && flushRequests.isEmpty()) {
+            Logger.debug("Package handler is paused");
+            return;
+        }
+        if (!sendingPackages.isEmpty() && !canSendInParallel()) {
+            Logger.verbose("Package handler is already sending");
+            return;
+        }
+
+        do {
+            ActivityPackage nextPackage = getNextPackage();
+            if (null == nextPackage) {
+                return;
+            }
+            if (!acquireBandwidth(nextPackage)) {
+                return;
+            }
+            if (!circuitBreaker.allowRequest()) {
+                shortCircuit();
+                return;
+            }
+
+            if (sendingPackages.isEmpty()) {
+                countRadioWakeUp();
+            }
+            sendingPackages.add(nextPackage);
+            getIdleRequestHandler().sendPackage(nextPackage);
+        } while (canSendInParallel());
+    }
+
+    // a flush sends several packages at once while the server answers, they may arrive out of order
+    private boolean canSendInParallel() {
+        return !flushRequests.isEmpty()
+            && sendingPackages.size() < FLUSH_PARALLELISM
+            && circuitBreaker.isClosed()
+            && clock.currentTimeMillis() >= retryAfter;
+    }
+
+    // the first package that is not being sent, packages without idempotency key only go alone
+    private ActivityPackage getNextPackage() {
+        if (sendingPackages.isEmpty()) {
+            return packageQueue.getFirst();
+        }
+
+        ActivityPackage nextPackage = packageQueue.getFirstExcept(sendingPackages);
+        if (null == nextPackage || null == nextPackage.getIdempotencyKey()) {
+            return null;
+        }
+        return nextPackage;
+    }
+
+    // prefer the first request handler, its connection is warm; the others come with the first flush
+    private RequestHandler getIdleRequestHandler() {
+        if (idleRequestHandlers.remove(requestHandler)) {
+            return requestHandler;
+        }
+        if (idleRequestHandlers.isEmpty()) {
+            return requestHandler.newSibling();
+        }
+        return idleRequestHandlers.remove(idleRequestHandlers.size() - 1);
+    }
+
+    private void finishSending(RequestHandler requestHandler, ActivityPackage activityPackage) {
+        sendingPackages.remove(activityPackage);
+        idleRequestHandlers.add(requestHandler);
+    }
+
+    // the package stays queued without waking up the radio, a probe gets sent once the circuit may close
+    private void shortCircuit() {
+        flushing = false;
+        Metrics.requestShortCircuited();
+
+        long remainingOpenTime = circuitBreaker.getRemainingOpenTime();
+        scheduler.cancel(sendFirstTask);
+        scheduler.postDelayed(sendFirstTask, remainingOpenTime);
+        Logger.verbose(String.format(Locale.US, "Circuit open, next probe in %d ms", remainingOpenTime));
+    }
+
+    private void sendNextInternal(RequestHandler requestHandler, ActivityPackage activityPackage) {
+        finishSending(requestHandler, activityPackage);
+        packageQueue.remove(activityPackage);
+        Metrics.setQueueDepth(packageQueue.size());
+        lastRequestFinishedAt = clock.currentTimeMillis();
+        for (FlushRequest flushRequest : flushRequests) {
+            flushRequest.packageDelivered();
+        }
+
+        writeQueue();
+        sendFirstInternal();
+    }
+
+    private void expandInternal(RequestHandler requestHandler, ActivityPackage aggregatePackage) {
+        finishSending(requestHandler, aggregatePackage);
+        packageQueue.remove(aggregatePackage);
+        List<ActivityPackage> eventPackages = EventAggregator.expand(aggregatePackage);
+        for (ActivityPackage eventPackage : eventPackages) {
+            packageQueue.add(eventPackage);
+        }
+        Metrics.setQueueDepth(packageQueue.size());
+        if (eventPackages.isEmpty()) {
+            Logger.error(String.format("Dropped malformed %s", aggregatePackage));
+        } else {
+            Logger.info(String.format(Locale.US, "Queued %s as %d single packages", aggregatePackage, eventPackages.size()));
+        }
+
+        packageQueue.write();
+        // the aggregate package is replaced by the single ones
+        Tracing.packageDropped(aggregatePackage.getPackageId());
+        for (ActivityPackage eventPackage : eventPackages) {
+            Tracing.packagePersisted(eventPackage.getPackageId());
+        }
+        sendFirstInternal();
+    }
+
+    // in catch-up mode only the head gets written after every package, a few bytes instead of the
+    // whole queue, so a crash never sends an acknowledged package again
+    private void writeQueue() {
+        boolean catchUp = flushPolicy.isCatchUp(packageQueue.size());
+        if (catchUp != catchingUp) {
+            catchingUp = catchUp;
+            Logger.info(String.format(Locale.US, catchUp ? "Catching up on %d packages" : "Caught up, %d packages left",
+                                      packageQueue.size()));
+        }
+
+        if (catchUp && packageQueue.writeHead()) {
+            return;
+        }
+        packageQueue.write();
+    }
+
+    // in catch-up mode the requests share the configured bandwidth, a request waits for its share
+    private boolean acquireBandwidth(ActivityPackage nextPackage) {
+        long bandwidth = flushPolicy.getCatchUpBandwidth();
+        if (0 == bandwidth || !flushPolicy.isCatchUp(packageQueue.size())) {
+            return true;
+        }
+
+        if (null == bandwidthBucket) {
+            bandwidthBucket = new TokenBucket(bandwidth, bandwidth); // bursts of one second
+        }
+        long byteCount = nextPackage.getByteCount();
+        long waitTime = bandwidthBucket.getWaitTime(byteCount);
+        if (waitTime > 0) {
+            scheduler.cancel(sendFirstTask);
+            scheduler.postDelayed(sendFirstTask, waitTime);
+            return false;
+        }
+
+        bandwidthBucket.tryAcquire(byteCount);
+        return true;
+    }
+
+    private void closeInternal(RequestHandler requestHandler, ActivityPackage activityPackage, boolean countServerError) {
+        finishSending(requestHandler, activityPackage);
+        lastRequestFinishedAt = clock.currentTimeMillis();
+        flushing = false;
+
+        // counted in the queue file, so a restart does not reset the attempts of a package the server fails on
+        if (countServerError) {
+            activityPackage.setServerErrors(activityPackage.getServerErrors() + 1);
+            activityPackage.setLastServerErrorAt(lastRequestFinishedAt);
+            packageQueue.write();
+        }
+
+        if (flushRequests.isEmpty()) {
+            return;
+        }
+
+        // keep retrying until the flush requests time out
+        for (FlushRequest flushRequest : flushRequests) {
+            flushRequest.packageRetried();
+        }
+        retryAfter = lastRequestFinishedAt + FLUSH_RETRY_INTERVAL;
+        scheduler.postDelayed(sendFirstTask, FLUSH_RETRY_INTERVAL);
+    }
+
+    private void checkFlushInternal() {
+        scheduler.cancel(checkFlushTask);
+        if (packageQueue.isEmpty()) {
+            return;
+        }
+
+        long now = clock.currentTimeMillis();
+        long packageAge = now - packageQueue.getFirst().getQueuedAt();
+        long idleTime = now - lastAddedAt;
+
+        if (flushPolicy.isFlushDue(packageQueue.size(), packageQueue.getByteCount(), packageAge, idleTime)) {
+            Logger.debug(String.format(Locale.US, "Flushing %d buffered packages", packageQueue.size()));
+            sendFirstInternal();
+            return;
+        }
+
+        // check again when the next age or idle threshold is reached
+        long checkDelay = flushPolicy.getCheckDelay(packageAge, idleTime);
+        if (checkDelay >= 0) {
+            scheduler.postDelayed(checkFlushTask, checkDelay);
+        }
+    }
+
+    private void flushInternal() {
+        if (packageQueue.isEmpty()) {
+            return;
+        }
+
+        Logger.debug(String.format(Locale.US, "Flushing %d packages", packageQueue.size()));
+        flushing = true;
+        sendFirstInternal();
+    }
+
+    private void flushRequestInternal(final FlushRequest flushRequest) {
+        flushRequests.add(flushRequest);
+
+        scheduler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                flushTimeoutInternal(flushRequest);
+            }
+        }, flushRequest.getTimeout());
+
+        Logger.debug(String.format(Locale.US, "Flushing %d packages", packageQueue.size()));
+        sendFirstInternal();
+    }
+
+    private void flushTimeoutInternal(FlushRequest flushRequest) {
+        if (flushRequests.remove(flushRequest)) {
+            flushRequest.finish(packageQueue.size(), true);
+        }
+    }
+
+    private void finishFlushRequests() {
+        for (FlushRequest flushRequest : flushRequests) {
+            flushRequest.finish(packageQueue.size(), false);
+        }
+        flushRequests.clear();
+    }
+
+    // a request that starts long after the last one finished wakes up the radio
+    private void countRadioWakeUp() {
+        long now = clock.currentTimeMillis();
+        if (now - lastRequestFinishedAt < RADIO_IDLE_INTERVAL) {
+            return;
+        }
+
+        double wakeUpsPerMinute = Metrics.radioWokeUp();
+        if (Logger.isLoggable(Logger.LogLevel.DEBUG)) {
+            Logger.debug(String.format(Locale.US, "Radio wake-up (%.2f per minute)", wakeUpsPerMinute));
+        }
+    }
+}
@@ -0,0 +1,346 @@
+//
+//  PackageQueue.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OptionalDataException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The persistent queue of packages that wait to be sent.
+ * <p/>
+ * Removing the first package only moves the head index, the sent packages
+ * are cut off when the queue gets written. Instead of writing the whole queue
+ * the package handler can write just the head: the idempotency key of the
+ * last sent package, in a small file of its own. Reading the queue drops the
+ * packages up to that key.
+ * <p/>
+ * Parallel requests can finish out of order. A package removed behind the
+ * head keeps its slot until the head reaches it or the queue gets written,
+ * its key is written along with the head.
+ * <p/>
+ * Not thread safe, only used by the package handler.
+ */
+public class PackageQueue {
+    private static final String PACKAGE_QUEUE_FILENAME = "AdjustIoPackageQueue";
+    private static final String QUEUE_HEAD_FILENAME    = "AdjustIoPackageQueueHead";
+
+    private final Storage               storage;
+    private       List<ActivityPackage> packages;
+    private       int                   head;      // index of the first package, the ones before were sent
+    private       String                headKey;   // of the last removal since the last write, or empty
+    private final Set<String>           removedKeys; // of packages removed behind the head
+    private       long                  byteCount;
+
+    protected PackageQueue(Storage storage) {
+        this.storage = storage;
+        this.packages = new ArrayList<ActivityPackage>();
+        this.removedKeys = new HashSet<String>();
+        this.headKey = "";
+    }
+
+    protected int size() {
+        return packages.size() - head - removedKeys.size();
+    }
+
+    protected boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // estimated size of the queued packages, see ActivityPackage.getByteCount
+    protected long getByteCount() {
+        return byteCount;
+    }
+
+    protected ActivityPackage getFirst() {
+        return packages.get(head);
+    }
+
+    // the first package that is neither removed nor one of the given ones, null if there is none
+    protected ActivityPackage getFirstExcept(List<ActivityPackage> excludedPackages) {
+        for (int index = head; index < packages.size(); index++) {
+            ActivityPackage activityPackage = packages.get(index);
+            if (!excludedPackages.contains(activityPackage) && !isRemoved(activityPackage)) {
+                return activityPackage;
+            }
+        }
+        return null;
+    }
+
+    protected void add(ActivityPackage newPackage) {
+        shareAttributeSet(newPackage);
+        packages.add(newPackage);
+        byteCount += newPackage.getByteCount();
+    }
+
+    // constant time, the slot is released when the queue gets written
+    protected ActivityPackage removeFirst() {
+        ActivityPackage firstPackage = removeHead();
+        byteCount -= firstPackage.getByteCount();
+
+        // packages removed behind the head before follow it now
+        while (head < packages.size() && removedKeys.remove(packages.get(head).getIdempotencyKey())) {
+            removeHead();
+        }
+
+        if (head == packages.size()) {
+            packages.clear();
+            head = 0;
+        }
+        return firstPackage;
+    }
+
+    // a package behind the head needs an idempotency key, that is how the head file names it
+    protected void remove(ActivityPackage activityPackage) {
+        if (activityPackage == getFirst()) {
+            removeFirst();
+            return;
+        }
+
+        removedKeys.add(activityPackage.getIdempotencyKey());
+        byteCount -= activityPackage.getByteCount();
+    }
+
+    private ActivityPackage removeHead() {
+        ActivityPackage firstPackage = packages.set(head, null);
+        head++;
+        headKey = firstPackage.getIdempotencyKey();
+        return firstPackage;
+    }
+
+    private boolean isRemoved(ActivityPackage activityPackage) {
+        return !removedKeys.isEmpty() && removedKeys.contains(activityPackage.getIdempotencyKey());
+    }
+
+    // equal attribute sets are written only once per queue file if they are the same instance
+    private void shareAttributeSet(ActivityPackage newPackage) {
+        if (isEmpty()) {
+            return;
+        }
+
+        AttributeSet lastAttributeSet = packages.get(packages.size() - 1).getAttributeSet();
+        if (lastAttributeSet != null && lastAttributeSet.equals(newPackage.getAttributeSet())) {
+            newPackage.setAttributeSet(lastAttributeSet);
+        }
+    }
+
+    protected void read() {
+        try {
+            InputStream inputStream = storage.openInput(PACKAGE_QUEUE_FILENAME);
+
+            try {
+                List<ActivityPackage> packages = readPackages(inputStream);
+                Logger.debug(String.format(Locale.US, "Package handler read %d packages", packages.size()));
+                setPackages(packages);
+                Set<String> sentKeys = new HashSet<String>();
+                dropSentPackages(readHead(sentKeys), sentKeys);
+                Tracing.packagesRead(this.packages);
+                return;
+            } catch (ClassNotFoundException e) {
+                Logger.error("Failed to find package queue class");
+            } catch (OptionalDataException e) {
+                /* no-op */
+            } catch (IOException e) {
+                Logger.error("Failed to read package queue object");
+            } catch (ClassCastException e) {
+                Logger.error("Failed to cast package queue object");
+            } finally {
+                inputStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            Logger.verbose("Package queue file not found");
+        } catch (Exception e) {
+            Logger.error("Failed to read package queue file");
+        }
+
+        // start with a fresh package queue in case of any exception
+        setPackages(new ArrayList<ActivityPackage>());
+    }
+
+    protected void write() {
+        // cut off the sent packages, shifting is as cheap as serializing the rest
+        if (head > 0) {
+            packages.subList(0, head).clear();
+            head = 0;
+        }
+        if (!removedKeys.isEmpty()) {
+            List<ActivityPackage> remainingPackages = new ArrayList<ActivityPackage>(size());
+            for (ActivityPackage activityPackage : packages) {
+                if (!isRemoved(activityPackage)) {
+                    remainingPackages.add(activityPackage);
+                }
+            }
+            packages = remainingPackages;
+            removedKeys.clear();
+        }
+        headKey = "";
+
+        try {
+            OutputStream outputStream = storage.openOutput(PACKAGE_QUEUE_FILENAME);
+            CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+
+            try {
+                writePackages(packages, countingStream);
+                Logger.debug(String.format(Locale.US, "Package handler wrote %d packages", packages.size()));
+            } catch (NotSerializableException e) {
+                Logger.error("Failed to serialize packages");
+            } finally {
+                countingStream.close();
+                Metrics.packageQueueWritten(countingStream.getByteCount());
+            }
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to write packages (%s)", e.getLocalizedMessage()));
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Persists the removal of the packages since the last write in a few
+     * bytes, instead of writing the whole queue.
+     *
+     * @return False if the last package removed from the head has no
+     *         idempotency key, it was queued by an older version. Write the
+     *         whole queue then.
+     */
+    protected boolean writeHead() {
+        if (null == headKey) {
+            return false;
+        }
+
+        try {
+            CountingOutputStream countingStream = new CountingOutputStream(storage.openOutput(QUEUE_HEAD_FILENAME));
+            DataOutputStream dataStream = new DataOutputStream(countingStream);
+            try {
+                dataStream.writeUTF(headKey);
+                dataStream.writeInt(removedKeys.size());
+                for (String removedKey : removedKeys) {
+                    dataStream.writeUTF(removedKey);
+                }
+            } finally {
+                dataStream.close();
+                Metrics.packageQueueWritten(countingStream.getByteCount());
+            }
+            return true;
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to write package queue head (%s)", e.getLocalizedMessage()));
+            return false;
+        }
+    }
+
+    // the key of the last package sent before the queue file was written the last time, if any,
+    // and the keys of the packages sent behind it
+    private String readHead(Set<String> sentKeys) {
+        try {
+            DataInputStream dataStream = new DataInputStream(storage.openInput(QUEUE_HEAD_FILENAME));
+            try {
+                String lastSentKey = dataStream.readUTF();
+                try {
+                    int sentKeyCount = dataStream.readInt();
+                    for (int index = 0; index < sentKeyCount; index++) {
+                        sentKeys.add(dataStream.readUTF());
+                    }
+                } catch (EOFException e) {
+                    sentKeys.clear(); // a head without the keys behind it
+                }
+                return lastSentKey;
+            } finally {
+                dataStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to read package queue head (%s)", e.getLocalizedMessage()));
+            return null;
+        }
+    }
+
+    // a key that is not in the queue is from an older head, the queue file was written after it
+    private void dropSentPackages(String lastSentKey, Set<String> sentKeys) {
+        if (null == lastSentKey) {
+            return;
+        }
+
+        int lastSentIndex = -1; // an empty key: no package was sent from the head
+        if (lastSentKey.length() > 0) {
+            while (++lastSentIndex < packages.size()) {
+                if (lastSentKey.equals(packages.get(lastSentIndex).getIdempotencyKey())) {
+                    break;
+                }
+            }
+            if (lastSentIndex == packages.size()) {
+                return;
+            }
+        }
+
+        List<ActivityPackage> remainingPackages = new ArrayList<ActivityPackage>(packages.size() - lastSentIndex - 1);
+        for (ActivityPackage activityPackage : packages.subList(lastSentIndex + 1, packages.size())) {
+            if (!sentKeys.contains(activityPackage.getIdempotencyKey())) {
+                remainingPackages.add(activityPackage);
+            }
+        }
+        int droppedCount = packages.size() - remainingPackages.size();
+        if (droppedCount > 0) {
+            setPackages(remainingPackages);
+            Logger.debug(String.format(Locale.US, "Package handler dropped %d sent packages", droppedCount));
+        }
+    }
+
+    private void setPackages(List<ActivityPackage> packages) {
+        this.packages = packages;
+        head = 0;
+        headKey = "";
+        removedKeys.clear();
+        byteCount = 0;
+        for (ActivityPackage activityPackage : packages) {
+            byteCount += activityPackage.getByteCount();
+        }
+    }
+
+    // stream level part of the queue persistence, also used by the benchmarks
+    protected static List<ActivityPackage> readPackages(InputStream inputStream) throws IOException, ClassNotFoundException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
+        ObjectInputStream objectStream = new ObjectInputStream(bufferedStream);
+
+        try {
+            Object object = objectStream.readObject();
+            @SuppressWarnings("unchecked")
+            List<ActivityPackage> packages = (List<ActivityPackage>) object;
+            return packages;
+        } finally {
+            objectStream.close();
+        }
+    }
+
+    protected static void writePackages(List<ActivityPackage> packages, OutputStream outputStream) throws IOException {
+        BufferedOutputStream bufferedStream = new BufferedOutputStream(outputStream);
+        ObjectOutputStream objectStream = new ObjectOutputStream(bufferedStream);
+
+        try {
+            objectStream.writeObject(packages);
+        } finally {
+            objectStream.close();
+        }
+    }
+}
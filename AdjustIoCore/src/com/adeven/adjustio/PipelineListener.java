@@ -0,0 +1,51 @@
+//
+//  PipelineListener.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-12.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Gets notified about every step of a package through the tracking pipeline.
+ * <p/>
+ * Register it with {@link AdjustIo#setPipelineListener(PipelineListener)} to
+ * debug slow deliveries. Timestamps come from {@link System#nanoTime()}, so
+ * only differences between them are meaningful. The package ID identifies a
+ * package from the moment its activity is accepted until it gets delivered.
+ * Packages read from the queue file after a restart keep their ID unless it
+ * was already used in the new launch.
+ * <p/>
+ * Aggregated events are built and persisted with the aggregate package of
+ * their window, which has an ID of its own for the later steps. If the server
+ * does not support aggregates, that package is dropped and its events get
+ * built and persisted as single packages with new IDs.
+ * <p/>
+ * The callbacks run on the calling thread of AdjustIo or on one of its
+ * background threads. Keep them short.
+ */
+public interface PipelineListener {
+    /** An event, revenue or session was accepted by AdjustIo. */
+    void onActivityAccepted(long packageId, long timestamp);
+
+    /** The package was built and is about to be queued. */
+    void onPackageBuilt(long packageId, long timestamp);
+
+    /** The package was written to the queue file. */
+    void onPackagePersisted(long packageId, long timestamp);
+
+    /** A request for the package is about to be sent. */
+    void onRequestStarted(long packageId, long timestamp);
+
+    /** The request for the package finished, with a response from the server or without one. */
+    void onRequestFinished(long packageId, long timestamp, boolean responded);
+
+    /** The package will be sent again later. */
+    void onPackageRetried(long packageId, long timestamp);
+
+    /** The package was removed from the queue without being delivered. */
+    void onPackageDropped(long packageId, long timestamp);
+}
@@ -0,0 +1,29 @@
+//
+//  Platform.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Map;
+
+/**
+ * Everything the tracking pipeline needs from the platform it runs on.
+ */
+public interface Platform {
+    Storage getStorage();
+
+    Clock getClock();
+
+    /** Creates a new scheduler with its own thread. */
+    Scheduler newScheduler(String name);
+
+    Transport newTransport();
+
+    /** Device data sent with every request, see {@link RequestEncoder}. */
+    Map<String, String> getDeviceData();
+}
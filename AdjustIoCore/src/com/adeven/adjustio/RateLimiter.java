@@ -0,0 +1,94 @@
+//
+//  RateLimiter.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-06.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// limits the rate of tracked activities globally and per event token
+public class RateLimiter {
+    private static final int    MAX_TOKEN_BUCKETS = 100;
+    private static final double DEFAULT_RATE      = 100;  // per second, only a runaway loop gets there
+    private static final double DEFAULT_BURST     = 1000;
+
+    private final TokenBucket              globalBucket;
+    private final double                   globalRate;
+    private final double                   tokenRate;
+    private final double                   tokenBurst;
+    private final Map<String, TokenBucket> tokenBuckets;
+
+    // rates in activities per second, zero disables the limit
+    protected RateLimiter(double globalRate, double globalBurst, double tokenRate, double tokenBurst) {
+        this.globalBucket = globalRate > 0 ? new TokenBucket(globalRate, globalBurst) : null;
+        this.globalRate = globalRate;
+        this.tokenRate = tokenRate;
+        this.tokenBurst = tokenBurst;
+        this.tokenBuckets = new HashMap<String, TokenBucket>();
+    }
+
+    // a generous global limit for the time before the configuration is read
+    protected static RateLimiter getDefault() {
+        return new RateLimiter(DEFAULT_RATE, DEFAULT_BURST, 0, 0);
+    }
+
+    protected boolean isEnabled() {
+        return globalBucket != null || tokenRate > 0;
+    }
+
+    // takes from both buckets or from none, so a throttled activity costs its token nothing
+    protected boolean tryAcquire(String eventToken) {
+        TokenBucket tokenBucket = getTokenBucket(eventToken);
+        if (null == tokenBucket) {
+            return null == globalBucket || globalBucket.tryAcquire();
+        }
+        if (null == globalBucket) {
+            return tokenBucket.tryAcquire();
+        }
+
+        // always locked in this order
+        synchronized (tokenBucket) {
+            synchronized (globalBucket) {
+                if (tokenBucket.getWaitTime(1) > 0 || globalBucket.getWaitTime(1) > 0) {
+                    return false;
+                }
+                tokenBucket.tryAcquire();
+                globalBucket.tryAcquire();
+                return true;
+            }
+        }
+    }
+
+    public String toString() {
+        return String.format(Locale.US, "global:%.1f/s token:%.1f/s", globalRate, tokenRate);
+    }
+
+    private TokenBucket getTokenBucket(String eventToken) {
+        if (tokenRate <= 0 || null == eventToken) {
+            return null;
+        }
+
+        synchronized (tokenBuckets) {
+            TokenBucket tokenBucket = tokenBuckets.get(eventToken);
+            if (tokenBucket != null) {
+                return tokenBucket;
+            }
+
+            // too many distinct tokens, fall back to the global limit
+            if (tokenBuckets.size() >= MAX_TOKEN_BUCKETS) {
+                return null;
+            }
+
+            tokenBucket = new TokenBucket(tokenRate, tokenBurst);
+            tokenBuckets.put(eventToken, tokenBucket);
+            return tokenBucket;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+//
+//  RequestEncoder.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodes activity packages as form encoded POST requests.
+ */
+public class RequestEncoder {
+    protected static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    // the charset of UrlEncodedFormEntity, which encoded the requests before, kept so the
+    // bytes on the wire stay the same: characters outside of Latin-1 are sent as '?'
+    private static final String FORM_ENCODING = "ISO-8859-1";
+
+    protected static TrackingRequest getRequest(ActivityPackage activityPackage, Map<String, String> deviceData) throws UnsupportedEncodingException {
+        String url = Constants.BASE_URL + activityPackage.getPath();
+
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("User-Agent", activityPackage.getUserAgent());
+        headers.put("Client-Sdk", activityPackage.getClientSdk());
+        headers.put("Accept-Language", Locale.getDefault().getLanguage());
+        if (activityPackage.getIdempotencyKey() != null) {
+            headers.put(IdempotencyKey.HEADER, activityPackage.getIdempotencyKey());
+        }
+
+        StringBuilder body = new StringBuilder(512);
+        appendParameters(body, activityPackage.getGeneralParameters());
+        appendParameters(body, activityPackage.getParameters());
+        if (deviceData != null) {
+            appendParameter(body, "device_data", Encoding.toJson(deviceData));
+        }
+
+        // the server answers session packages with the attribution
+        boolean responseBodyNeeded = ActivityPackage.PackageType.SESSION_START == activityPackage.getType();
+        return new TrackingRequest(url, headers, CONTENT_TYPE, body.toString().getBytes(FORM_ENCODING), responseBodyNeeded);
+    }
+
+    private static void appendParameters(StringBuilder body, Map<String, String> parameters) throws UnsupportedEncodingException {
+        for (Map.Entry<String, String> entry : parameters.entrySet()) {
+            appendParameter(body, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void appendParameter(StringBuilder body, String key, String value) throws UnsupportedEncodingException {
+        if (body.length() > 0) {
+            body.append('&');
+        }
+        body.append(URLEncoder.encode(key, FORM_ENCODING));
+        body.append('=');
+        if (value != null) {
+            body.append(URLEncoder.encode(value, FORM_ENCODING));
+        }
+    }
+}
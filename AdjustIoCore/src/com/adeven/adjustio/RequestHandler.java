@@ -0,0 +1,242 @@
+//
+//  RequestHandler.java
+//  AdjustIo
+//
+//  Created by Christian Wellenbrock on 2013-06-25.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+
+public class RequestHandler {
+    // servers close idle connections, a connection used more recently than this is still open
+    private static final long   CONNECTION_IDLE_TIME = Constants.THIRTY_SECONDS;
+    // a package the server keeps failing on would block the queue, it gets dropped after this many attempts
+    protected static final int  MAX_SERVER_ERRORS    = 10;
+    // server errors closer together count as one attempt, so a short outage does not use them up
+    protected static final long SERVER_ERROR_SPACING = Constants.THIRTY_SECONDS;
+
+    private final Scheduler        scheduler;
+    private final PackageHandler   packageHandler;
+    private final Platform         platform;
+    private final Clock            clock;
+    private final CircuitBreaker   circuitBreaker;
+    private final AttributionCache attributionCache;
+    private final TimeoutEstimator timeoutEstimator; // shared with the other request handlers of a flush
+    private       Transport        transport;
+    private       long             lastConnectedAt; // only accessed in the request thread
+
+    protected RequestHandler(PackageHandler packageHandler, Platform platform, CircuitBreaker circuitBreaker,
+                             AttributionCache attributionCache) {
+        this(packageHandler, platform, circuitBreaker, attributionCache,
+             new TimeoutEstimator(platform.getStorage(), platform.getClock()), true);
+    }
+
+    private RequestHandler(PackageHandler packageHandler, Platform platform, CircuitBreaker circuitBreaker,
+                           AttributionCache attributionCache, TimeoutEstimator timeoutEstimator,
+                           final boolean readTimeout) {
+        this.scheduler = platform.newScheduler(Constants.LOGTAG);
+        this.packageHandler = packageHandler;
+        this.platform = platform;
+        this.clock = platform.getClock();
+        this.circuitBreaker = circuitBreaker;
+        this.attributionCache = attributionCache;
+        this.timeoutEstimator = timeoutEstimator;
+
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                initInternal(readTimeout);
+            }
+        });
+    }
+
+    // another request handler with its own thread and connection for parallel requests
+    protected RequestHandler newSibling() {
+        return new RequestHandler(packageHandler, platform, circuitBreaker, attributionCache, timeoutEstimator, false);
+    }
+
+    protected void sendPackage(final ActivityPackage pack) {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                sendInternal(pack);
+            }
+        });
+    }
+
+    // open a connection before the next package is ready, for example on session start
+    protected void connect() {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                connectInternal();
+            }
+        });
+    }
+
+    private void initInternal(boolean readTimeout) {
+        transport = platform.newTransport();
+        if (readTimeout) {
+            timeoutEstimator.read();
+        }
+    }
+
+    private void connectInternal() {
+        long now = clock.currentTimeMillis();
+        if (now - lastConnectedAt < CONNECTION_IDLE_TIME || !circuitBreaker.isClosed()) {
+            return;
+        }
+
+        try {
+            transport.connect(timeoutEstimator.getTimeout());
+            lastConnectedAt = clock.currentTimeMillis();
+            timeoutEstimator.requestSucceeded(lastConnectedAt - now);
+            circuitBreaker.requestSucceeded();
+            Logger.verbose(String.format(Locale.US, "Connected in %d ms", lastConnectedAt - now));
+        } catch (SocketTimeoutException e) {
+            timeoutEstimator.requestTimedOut();
+            circuitBreaker.requestFailed();
+            Logger.debug(String.format("Failed to connect ahead of time (%s)", e));
+        } catch (IOException e) {
+            // the next request connects again and reports the failure
+            circuitBreaker.requestFailed();
+            Logger.debug(String.format("Failed to connect ahead of time (%s)", e));
+        }
+    }
+
+    private void sendInternal(ActivityPackage activityPackage) {
+        long startedAt = clock.currentTimeMillis();
+        try {
+            TrackingRequest request = RequestEncoder.getRequest(activityPackage, platform.getDeviceData());
+            Metrics.requestSent(request.getByteCount());
+            Tracing.requestStarted(activityPackage.getPackageId());
+            long sentAt = clock.currentTimeMillis();
+            TrackingResponse response = transport.send(request, timeoutEstimator.getTimeout());
+            lastConnectedAt = clock.currentTimeMillis();
+            timeoutEstimator.requestSucceeded(lastConnectedAt - sentAt);
+            Tracing.requestFinished(activityPackage.getPackageId(), true);
+            requestFinished(response, activityPackage);
+        } catch (UnsupportedEncodingException e) {
+            sendNextPackage(activityPackage, FailureType.ENCODING, "Failed to encode parameters", e);
+        } catch (ProtocolException e) {
+            closePackage(activityPackage, FailureType.PROTOCOL, "Client protocol error", e);
+        } catch (SocketTimeoutException e) {
+            // the slot is free again right away, the next attempt gets a longer timeout
+            timeoutEstimator.requestTimedOut();
+            closePackage(activityPackage, FailureType.TIMEOUT, "Request timed out", e);
+        } catch (IOException e) {
+            closePackage(activityPackage, FailureType.NETWORK, "Request failed", e);
+        } catch (Exception e) {
+            sendNextPackage(activityPackage, FailureType.RUNTIME, "Runtime exeption", e);
+        } finally {
+            Metrics.requestFinished(clock.currentTimeMillis() - startedAt);
+        }
+    }
+
+    private void requestFinished(TrackingResponse response, ActivityPackage activityPackage) {
+        int statusCode = response.getStatusCode();
+        String responseString = response.getBody();
+
+        // server errors usually say nothing about the package, keep it until the server is back
+        if (statusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+            String message = String.format(Locale.US, "Server error %d: %s", statusCode, responseString);
+            boolean counted = clock.currentTimeMillis() - activityPackage.getLastServerErrorAt() >= SERVER_ERROR_SPACING;
+            if (counted && activityPackage.getServerErrors() + 1 >= MAX_SERVER_ERRORS) {
+                circuitBreaker.requestFailed();
+                Metrics.requestFailed(FailureType.SERVER, false);
+                Tracing.packageDropped(activityPackage.getPackageId());
+                Logger.error(String.format(Locale.US, "%s. (%s) Giving up after %d attempts.",
+                                           activityPackage.getFailureMessage(), message, MAX_SERVER_ERRORS));
+                packageHandler.sendNextPackage(this, activityPackage);
+                return;
+            }
+            retryPackage(activityPackage, FailureType.SERVER, message, null, counted);
+            return;
+        }
+
+        // client errors concern the package, not the availability of the server
+        circuitBreaker.requestSucceeded();
+
+        // a server without the aggregate endpoint gets the aggregated events one by one
+        if (HttpURLConnection.HTTP_NOT_FOUND == statusCode
+            && ActivityPackage.PackageType.AGGREGATE == activityPackage.getType()) {
+            Logger.warn("The server does not support aggregated events, sending them one by one");
+            EventAggregator.setEndpointMissing();
+            packageHandler.expandPackage(this, activityPackage);
+            return;
+        }
+
+        if (HttpURLConnection.HTTP_OK == statusCode) {
+            Metrics.packageDelivered(activityPackage.getQueuedAt());
+            Logger.info(activityPackage.getSuccessMessage());
+            updateAttribution(responseString);
+        } else {
+            Metrics.requestFailed(FailureType.SERVER, false);
+            Tracing.packageDropped(activityPackage.getPackageId());
+            Logger.error(String.format("%s. (%s)", activityPackage.getFailureMessage(), responseString));
+        }
+
+        packageHandler.sendNextPackage(this, activityPackage);
+    }
+
+    // only session responses have a body, older servers answer without attribution
+    private void updateAttribution(String responseString) {
+        if (null == attributionCache || null == responseString || responseString.length() == 0) {
+            return;
+        }
+
+        Attribution attribution = Attribution.fromJson(responseString);
+        if (null == attribution) {
+            Logger.verbose(String.format("No attribution in response (%s)", responseString));
+            return;
+        }
+        attributionCache.update(attribution);
+    }
+
+    // the network failed
+    private void closePackage(ActivityPackage activityPackage, FailureType failureType, String message, Throwable throwable) {
+        Tracing.requestFinished(activityPackage.getPackageId(), false);
+        retryPackage(activityPackage, failureType, message, throwable, false);
+    }
+
+    // the server or the network failed
+    private void retryPackage(ActivityPackage activityPackage, FailureType failureType, String message, Throwable throwable,
+                              boolean countServerError) {
+        circuitBreaker.requestFailed();
+        Metrics.requestFailed(failureType, true);
+        Tracing.packageRetried(activityPackage.getPackageId());
+        final String failureMessage = activityPackage.getFailureMessage();
+        final String errorMessage;
+        if (throwable != null) {
+            errorMessage = String.format("%s. (%s: %s) Will retry later.", failureMessage, message, throwable);
+        } else {
+            errorMessage = String.format("%s. (%s) Will retry later.", failureMessage, message);
+        }
+        Logger.error(errorMessage);
+        packageHandler.closePackage(this, activityPackage, countServerError);
+    }
+
+    // the request failed on the device
+    private void sendNextPackage(ActivityPackage activityPackage, FailureType failureType, String message, Throwable throwable) {
+        circuitBreaker.requestSkipped();
+        Metrics.requestFailed(failureType, false);
+        Tracing.packageDropped(activityPackage.getPackageId());
+        String failureMessage = activityPackage.getFailureMessage();
+        if (throwable != null) {
+            Logger.error(String.format("%s (%s: %s)", failureMessage, message, throwable));
+        } else {
+            Logger.error(String.format("%s (%s)", failureMessage, message));
+        }
+
+        packageHandler.sendNextPackage(this, activityPackage);
+    }
+}
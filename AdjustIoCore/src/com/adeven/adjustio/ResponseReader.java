@@ -0,0 +1,64 @@
+//
+//  ResponseReader.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Reads response bodies into one small buffer that is reused for every
+ * response of a transport.
+ * <p/>
+ * The tracking server answers with a few bytes. A longer body, for example
+ * the error page of a proxy, is cut off after {@link #MAX_BODY_LENGTH} bytes
+ * and the transport closes the connection instead of reading the rest.
+ * <p/>
+ * Not thread safe, one per transport.
+ */
+public class ResponseReader {
+    protected static final int MAX_BODY_LENGTH = 4096;
+
+    private final byte[] buffer;
+    private       int    length;
+
+    protected ResponseReader() {
+        this.buffer = new byte[MAX_BODY_LENGTH];
+    }
+
+    /**
+     * Reads the body until its end, the stream stays open.
+     *
+     * @param inputStream The body, or null for a response without one.
+     * @return False if the body is longer than {@link #MAX_BODY_LENGTH}, the
+     *         connection cannot be reused then.
+     */
+    protected boolean read(InputStream inputStream) throws IOException {
+        length = 0;
+        if (null == inputStream) {
+            return true;
+        }
+
+        int count;
+        while (length < buffer.length && (count = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+            length += count;
+        }
+        return length < buffer.length || inputStream.read() == -1;
+    }
+
+    // the body read last, decoded only when needed
+    protected String getBody() {
+        try {
+            return new String(buffer, 0, length, Constants.ENCODING).trim();
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+    }
+}
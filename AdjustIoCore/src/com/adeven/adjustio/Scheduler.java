@@ -0,0 +1,22 @@
+//
+//  Scheduler.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Runs tasks one after another on a background thread.
+ */
+public interface Scheduler {
+    void post(Runnable task);
+
+    void postDelayed(Runnable task, long delayInMilliseconds);
+
+    /** Removes all pending runs of the task. */
+    void cancel(Runnable task);
+}
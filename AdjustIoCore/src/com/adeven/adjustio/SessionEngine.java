@@ -0,0 +1,187 @@
+//
+//  SessionEngine.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import static com.adeven.adjustio.Constants.ONE_SECOND;
+import static com.adeven.adjustio.Constants.THIRTY_SECONDS;
+
+import java.util.Locale;
+
+/**
+ * The session state machine: counts sessions, subsessions and events and
+ * measures session length and time spent.
+ * <p/>
+ * Not thread safe, used by the activity handler on its own thread. It does
+ * not persist the activity state, that's up to the caller. Every transition
+ * reads the clock once, so a recorded {@link SessionTrace} replays to the
+ * same state, see {@link SessionReplay}.
+ */
+public class SessionEngine {
+    private static final long   SESSION_INTERVAL    = THIRTY_SECONDS;
+    private static final long   SUBSESSION_INTERVAL = ONE_SECOND;
+    private static final String TIME_TRAVEL         = "Time travel!";
+
+    private final Clock         clock;
+    private       ActivityState activityState;
+    private       SessionTrace  trace;
+
+    protected SessionEngine(Clock clock) {
+        this.clock = clock;
+    }
+
+    protected ActivityState getActivityState() {
+        return activityState;
+    }
+
+    // null to start over with the very first session
+    protected void setActivityState(ActivityState activityState) {
+        this.activityState = activityState;
+    }
+
+    // records every following transition, null to stop
+    protected void setTrace(SessionTrace trace) {
+        this.trace = trace;
+    }
+
+    protected boolean hasActivityState() {
+        if (null == activityState) {
+            Logger.error("Missing activity state.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * An activity resumed.
+     *
+     * @return A builder with the attributes of the session package if a new
+     *         session started, null otherwise.
+     */
+    protected PackageBuilder startSubsession() {
+        long now = clock.currentTimeMillis();
+        record(SessionTrace.Transition.RESUME, now);
+
+        // very first session
+        if (null == activityState) {
+            activityState = new ActivityState();
+            activityState.sessionCount = 1; // this is the first session
+            activityState.createdAt = now;  // starting now
+
+            PackageBuilder sessionBuilder = getSessionBuilder();
+            activityState.resetSessionAttributes(now);
+            Logger.info("First session");
+            return sessionBuilder;
+        }
+
+        long lastInterval = now - activityState.lastActivity;
+        if (lastInterval < 0) {
+            Logger.error(TIME_TRAVEL);
+            activityState.lastActivity = now;
+            return null;
+        }
+
+        // new session
+        if (lastInterval > SESSION_INTERVAL) {
+            activityState.sessionCount++;
+            activityState.createdAt = now;
+            activityState.lastInterval = lastInterval;
+
+            PackageBuilder sessionBuilder = getSessionBuilder();
+            activityState.resetSessionAttributes(now);
+            if (Logger.isLoggable(Logger.LogLevel.DEBUG)) {
+                Logger.debug(String.format(Locale.US,
+                                           "Session %d", activityState.sessionCount));
+            }
+            return sessionBuilder;
+        }
+
+        // new subsession
+        if (lastInterval > SUBSESSION_INTERVAL) {
+            activityState.subsessionCount++;
+            if (Logger.isLoggable(Logger.LogLevel.INFO)) {
+                Logger.info(String.format(Locale.US,
+                                          "Started subsession %d of session %d",
+                                          activityState.subsessionCount,
+                                          activityState.sessionCount));
+            }
+        }
+        activityState.sessionLength += lastInterval;
+        activityState.lastActivity = now;
+        return null;
+    }
+
+    // an activity paused, or the timer fired
+    protected void update() {
+        long now = clock.currentTimeMillis();
+        record(SessionTrace.Transition.UPDATE, now);
+        update(now);
+    }
+
+    private void update(long now) {
+        if (!hasActivityState()) {
+            return;
+        }
+
+        long lastInterval = now - activityState.lastActivity;
+        if (lastInterval < 0) {
+            Logger.error(TIME_TRAVEL);
+            activityState.lastActivity = now;
+            return;
+        }
+
+        // ignore late updates
+        if (lastInterval > SESSION_INTERVAL) {
+            return;
+        }
+
+        activityState.sessionLength += lastInterval;
+        activityState.timeSpent += lastInterval;
+        activityState.lastActivity = now;
+    }
+
+    // count a new event and inject its attributes into its builder
+    protected void trackEvent(PackageBuilder eventBuilder) {
+        long now = clock.currentTimeMillis();
+        record(SessionTrace.Transition.EVENT, now);
+        activityState.createdAt = now;
+        activityState.eventCount++;
+        update(now);
+        activityState.injectEventAttributes(eventBuilder);
+    }
+
+    // count an event that gets sent as part of an aggregate package later
+    protected void countEvent() {
+        long now = clock.currentTimeMillis();
+        record(SessionTrace.Transition.COUNT, now);
+        activityState.eventCount++;
+        update(now);
+    }
+
+    // inject the current attributes into the builder of an aggregate package
+    protected void injectAggregateAttributes(PackageBuilder aggregateBuilder) {
+        long now = clock.currentTimeMillis();
+        record(SessionTrace.Transition.AGGREGATE, now);
+        activityState.createdAt = now;
+        update(now);
+        activityState.injectEventAttributes(aggregateBuilder);
+    }
+
+    private void record(SessionTrace.Transition transition, long now) {
+        if (trace != null) {
+            trace.add(transition, now);
+        }
+    }
+
+    private PackageBuilder getSessionBuilder() {
+        PackageBuilder builder = new PackageBuilder();
+        activityState.injectSessionAttributes(builder);
+        return builder;
+    }
+}
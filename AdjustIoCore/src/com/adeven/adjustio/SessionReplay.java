@@ -0,0 +1,83 @@
+//
+//  SessionReplay.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-20.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Feeds a {@link SessionTrace} through a {@link SessionEngine} in place, with
+ * a clock that returns the recorded times. The engine gets called the same
+ * way the activity handler calls it, so the replay ends in the same activity
+ * state as the recorded run.
+ * <p/>
+ * No packages are built and nothing gets persisted, only the session packages
+ * are counted.
+ */
+public class SessionReplay {
+    private final ReplayClock    clock;
+    private final SessionEngine  sessionEngine;
+    private final PackageBuilder eventBuilder;
+    private       int            sessionCount;
+
+    // the activity state at the start of the trace, null for a fresh install; it gets modified
+    protected SessionReplay(ActivityState activityState) {
+        clock = new ReplayClock();
+        sessionEngine = new SessionEngine(clock);
+        sessionEngine.setActivityState(activityState);
+        eventBuilder = new PackageBuilder();
+    }
+
+    protected ActivityState replay(SessionTrace trace) {
+        int size = trace.size();
+        for (int index = 0; index < size; index++) {
+            clock.now = trace.getTime(index);
+
+            switch (trace.getTransition(index)) {
+                case RESUME:
+                    if (sessionEngine.startSubsession() != null) {
+                        sessionCount++;
+                    }
+                    break;
+                case UPDATE:
+                    sessionEngine.update();
+                    break;
+                case EVENT:
+                    // the activity handler drops events before the first session
+                    if (sessionEngine.hasActivityState()) {
+                        sessionEngine.trackEvent(eventBuilder);
+                    }
+                    break;
+                case COUNT:
+                    if (sessionEngine.hasActivityState()) {
+                        sessionEngine.countEvent();
+                    }
+                    break;
+                case AGGREGATE:
+                    if (sessionEngine.hasActivityState()) {
+                        sessionEngine.injectAggregateAttributes(eventBuilder);
+                    }
+                    break;
+            }
+        }
+        return sessionEngine.getActivityState();
+    }
+
+    // the number of session packages the replayed transitions would have sent
+    protected int getSessionCount() {
+        return sessionCount;
+    }
+
+    private static class ReplayClock implements Clock {
+        private long now;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+//
+//  SessionTrace.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-20.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * A recorded sequence of session transitions with their times, kept in two
+ * arrays so that millions of them can be replayed without allocations.
+ * <p/>
+ * The text form has one transition per line: the time in milliseconds since
+ * 1970 and the name of the transition, for example "1384948800000 resume".
+ * Empty lines and lines starting with # are ignored.
+ */
+public class SessionTrace {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    public enum Transition {
+        RESUME("resume"),       // an activity resumed
+        UPDATE("update"),       // an activity paused or the timer fired
+        EVENT("event"),         // an event or revenue got tracked
+        COUNT("count"),         // an event got counted for an aggregate package
+        AGGREGATE("aggregate"); // an aggregate package got built
+        private final String name;
+
+        Transition(final String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // pause and timer are the same transition for the session engine
+        protected static Transition fromName(String name) {
+            if ("pause".equals(name) || "timer".equals(name)) {
+                return UPDATE;
+            }
+            for (Transition transition : TRANSITIONS) {
+                if (transition.name.equals(name)) {
+                    return transition;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final Transition[] TRANSITIONS = Transition.values();
+
+    private long[] times;
+    private byte[] transitions;
+    private int    size;
+
+    protected SessionTrace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    protected SessionTrace(int capacity) {
+        times = new long[Math.max(capacity, 1)];
+        transitions = new byte[times.length];
+    }
+
+    protected void add(Transition transition, long time) {
+        // Arrays.copyOf needs API level 9
+        if (size == times.length) {
+            long[] grownTimes = new long[size * 2];
+            System.arraycopy(times, 0, grownTimes, 0, size);
+            times = grownTimes;
+            byte[] grownTransitions = new byte[size * 2];
+            System.arraycopy(transitions, 0, grownTransitions, 0, size);
+            transitions = grownTransitions;
+        }
+        times[size] = time;
+        transitions[size] = (byte) transition.ordinal();
+        size++;
+    }
+
+    protected int size() {
+        return size;
+    }
+
+    protected long getTime(int index) {
+        return times[index];
+    }
+
+    protected Transition getTransition(int index) {
+        return TRANSITIONS[transitions[index]];
+    }
+
+    protected void write(Writer writer) throws IOException {
+        for (int index = 0; index < size; index++) {
+            writer.write(Long.toString(times[index]));
+            writer.write(' ');
+            writer.write(TRANSITIONS[transitions[index]].name);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    protected static SessionTrace read(Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        SessionTrace trace = new SessionTrace();
+
+        int lineNumber = 0;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+
+            int separator = line.indexOf(' ');
+            Transition transition = null;
+            long time = -1;
+            if (separator > 0) {
+                transition = Transition.fromName(line.substring(separator + 1).trim().toLowerCase(Locale.US));
+                try {
+                    time = Long.parseLong(line.substring(0, separator));
+                } catch (NumberFormatException e) {
+                    time = -1;
+                }
+            }
+            if (null == transition || time < 0) {
+                throw new IOException(String.format(Locale.US, "Malformed session trace line %d: '%s'", lineNumber, line));
+            }
+
+            trace.add(transition, time);
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,27 @@
+//
+//  Storage.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Private file storage for the activity state and the package queue.
+ */
+public interface Storage {
+    /**
+     * @throws java.io.FileNotFoundException If there is no file with that name yet.
+     */
+    InputStream openInput(String name) throws IOException;
+
+    /** Replaces the content of the file with that name. */
+    OutputStream openOutput(String name) throws IOException;
+}
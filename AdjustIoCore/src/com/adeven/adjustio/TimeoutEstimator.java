@@ -0,0 +1,119 @@
+//
+//  TimeoutEstimator.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-22.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Derives the request timeout from the measured request durations, the way
+ * TCP derives its retransmission timeout (RFC 6298): a smoothed duration
+ * plus four times its mean deviation, between a floor and a ceiling.
+ * <p/>
+ * Every timeout doubles the next one until a request succeeds again, and
+ * timed out requests are not measured, so a slow network does not keep
+ * failing. The estimate is kept in a file to start the next launch with it.
+ * <p/>
+ * Shared by the request handlers of a parallel flush, so it is synchronized.
+ */
+public class TimeoutEstimator {
+    protected static final int MIN_TIMEOUT     = 5 * Constants.ONE_SECOND;
+    protected static final int MAX_TIMEOUT     = Constants.ONE_MINUTE;
+    protected static final int INITIAL_TIMEOUT = 20 * Constants.ONE_SECOND; // before the first measurement
+
+    private static final String TIMEOUT_FILENAME = "AdjustIoRequestTimeout";
+    private static final long   WRITE_INTERVAL   = Constants.ONE_MINUTE;
+
+    private final Storage storage;
+    private final Clock   clock;
+    private       long    smoothedDuration; // milliseconds, 0 until the first measurement
+    private       long    durationDeviation;
+    private       int     backoff;          // timeouts since the last success
+    private       long    lastWrittenAt;
+
+    protected TimeoutEstimator(Storage storage, Clock clock) {
+        this.storage = storage;
+        this.clock = clock;
+    }
+
+    // the timeout for connecting and for every read of the next request
+    protected synchronized int getTimeout() {
+        long timeout = smoothedDuration > 0 ? smoothedDuration + 4 * durationDeviation : INITIAL_TIMEOUT;
+        timeout = Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, timeout));
+        return (int) Math.min(MAX_TIMEOUT, timeout << Math.min(backoff, 4));
+    }
+
+    protected synchronized void requestSucceeded(long duration) {
+        if (smoothedDuration == 0) {
+            smoothedDuration = Math.max(1, duration);
+            durationDeviation = duration / 2;
+        } else {
+            durationDeviation = (3 * durationDeviation + Math.abs(smoothedDuration - duration)) / 4;
+            smoothedDuration = Math.max(1, (7 * smoothedDuration + duration) / 8);
+        }
+        backoff = 0;
+
+        long now = clock.currentTimeMillis();
+        if (now - lastWrittenAt >= WRITE_INTERVAL) {
+            lastWrittenAt = now;
+            write();
+        }
+        Metrics.requestTimeoutChanged(getTimeout());
+    }
+
+    protected synchronized void requestTimedOut() {
+        backoff++;
+        int timeout = getTimeout();
+        Metrics.requestTimeoutChanged(timeout);
+        Logger.debug(String.format(Locale.US, "Request timeout raised to %d ms", timeout));
+    }
+
+    protected synchronized void read() {
+        try {
+            InputStream inputStream = storage.openInput(TIMEOUT_FILENAME);
+            try {
+                DataInputStream dataStream = new DataInputStream(inputStream);
+                long smoothedDuration = dataStream.readLong();
+                long durationDeviation = dataStream.readLong();
+                if (smoothedDuration >= 0 && durationDeviation >= 0) {
+                    this.smoothedDuration = smoothedDuration;
+                    this.durationDeviation = durationDeviation;
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch (FileNotFoundException e) {
+            Logger.verbose("Request timeout file not found");
+        } catch (Exception e) {
+            Logger.error(String.format("Failed to read request timeout (%s)", e));
+        }
+
+        Metrics.requestTimeoutChanged(getTimeout());
+        Logger.verbose(String.format(Locale.US, "Request timeout %d ms", getTimeout()));
+    }
+
+    private void write() {
+        try {
+            DataOutputStream dataStream = new DataOutputStream(storage.openOutput(TIMEOUT_FILENAME));
+            try {
+                dataStream.writeLong(smoothedDuration);
+                dataStream.writeLong(durationDeviation);
+            } finally {
+                dataStream.close();
+            }
+        } catch (IOException e) {
+            Logger.error(String.format("Failed to write request timeout (%s)", e));
+        }
+    }
+}
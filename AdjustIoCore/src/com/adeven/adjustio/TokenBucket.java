@@ -0,0 +1,60 @@
+//
+//  TokenBucket.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-06.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+// allows bursts of up to capacity, refilled continuously at ratePerSecond
+public class TokenBucket {
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final double capacity;
+    private final double ratePerSecond;
+    private       double tokens;
+    private       long   refilledAt;   // System.nanoTime()
+
+    protected TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    protected boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    // more than capacity counts as capacity, so large amounts pass once the bucket is full
+    protected synchronized boolean tryAcquire(double count) {
+        refill();
+        count = Math.min(count, capacity);
+        if (tokens < count) {
+            return false;
+        }
+
+        tokens -= count;
+        return true;
+    }
+
+    // milliseconds until tryAcquire(count) succeeds
+    protected synchronized long getWaitTime(double count) {
+        refill();
+        double missing = Math.min(count, capacity) - tokens;
+        if (missing <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(missing / ratePerSecond * 1000);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double refill = (now - refilledAt) / NANOS_PER_SECOND * ratePerSecond;
+        tokens = Math.min(capacity, tokens + refill);
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,139 @@
+//
+//  Tracing.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-12.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// forwards pipeline steps to the listener, a volatile read and nothing else without one
+public class Tracing {
+    private static final AtomicLong lastPackageId = new AtomicLong();
+
+    private static volatile PipelineListener listener;
+
+    protected static void setListener(PipelineListener listener) {
+        Tracing.listener = listener;
+    }
+
+    protected static long nextPackageId() {
+        return lastPackageId.incrementAndGet();
+    }
+
+    // new IDs continue after the ones of the packages read from the queue file, a read package
+    // with an ID that was already handed out in this launch gets a new one
+    protected static void packagesRead(List<ActivityPackage> packages) {
+        long maxPackageId = 0;
+        for (ActivityPackage activityPackage : packages) {
+            maxPackageId = Math.max(maxPackageId, activityPackage.getPackageId());
+        }
+
+        long handedOut;
+        do {
+            handedOut = lastPackageId.get();
+        } while (maxPackageId > handedOut && !lastPackageId.compareAndSet(handedOut, maxPackageId));
+
+        if (0 == handedOut) {
+            return;
+        }
+        for (ActivityPackage activityPackage : packages) {
+            if (activityPackage.getPackageId() <= handedOut) {
+                activityPackage.setPackageId(nextPackageId());
+            }
+        }
+    }
+
+    protected static void activityAccepted(long packageId) {
+        PipelineListener listener = Tracing.listener;
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onActivityAccepted(packageId, System.nanoTime());
+        } catch (Exception e) {
+            listenerFailed(e);
+        }
+    }
+
+    protected static void packageBuilt(long packageId) {
+        PipelineListener listener = Tracing.listener;
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onPackageBuilt(packageId, System.nanoTime());
+        } catch (Exception e) {
+            listenerFailed(e);
+        }
+    }
+
+    protected static void packagePersisted(long packageId) {
+        PipelineListener listener = Tracing.listener;
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onPackagePersisted(packageId, System.nanoTime());
+        } catch (Exception e) {
+            listenerFailed(e);
+        }
+    }
+
+    protected static void requestStarted(long packageId) {
+        PipelineListener listener = Tracing.listener;
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onRequestStarted(packageId, System.nanoTime());
+        } catch (Exception e) {
+            listenerFailed(e);
+        }
+    }
+
+    protected static void requestFinished(long packageId, boolean responded) {
+        PipelineListener listener = Tracing.listener;
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onRequestFinished(packageId, System.nanoTime(), responded);
+        } catch (Exception e) {
+            listenerFailed(e);
+        }
+    }
+
+    protected static void packageRetried(long packageId) {
+        PipelineListener listener = Tracing.listener;
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onPackageRetried(packageId, System.nanoTime());
+        } catch (Exception e) {
+            listenerFailed(e);
+        }
+    }
+
+    protected static void packageDropped(long packageId) {
+        PipelineListener listener = Tracing.listener;
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onPackageDropped(packageId, System.nanoTime());
+        } catch (Exception e) {
+            listenerFailed(e);
+        }
+    }
+
+    private static void listenerFailed(Exception e) {
+        Logger.error(String.format("Pipeline listener failed (%s)", e));
+    }
+}
@@ -0,0 +1,63 @@
+//
+//  TrackingRequest.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An encoded POST request for one activity package.
+ */
+public class TrackingRequest {
+    private final String              url;
+    private final Map<String, String> headers;
+    private final String              contentType;
+    private final byte[]              body;
+    private final boolean             responseBodyNeeded;
+
+    public TrackingRequest(String url, Map<String, String> headers, String contentType, byte[] body) {
+        this(url, headers, contentType, body, false);
+    }
+
+    public TrackingRequest(String url, Map<String, String> headers, String contentType, byte[] body, boolean responseBodyNeeded) {
+        this.url = url;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<String, String>(headers));
+        this.contentType = contentType;
+        this.body = body;
+        this.responseBodyNeeded = responseBodyNeeded;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    // true if the body of a successful response gets parsed, otherwise only failures keep it
+    public boolean isResponseBodyNeeded() {
+        return responseBodyNeeded;
+    }
+
+    // URL and body, headers are not counted
+    public long getByteCount() {
+        return url.length() + body.length;
+    }
+}
@@ -0,0 +1,31 @@
+//
+//  TrackingResponse.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * The status code and body of the response to a {@link TrackingRequest}.
+ */
+public class TrackingResponse {
+    private final int    statusCode;
+    private final String body;
+
+    public TrackingResponse(int statusCode, String body) {
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
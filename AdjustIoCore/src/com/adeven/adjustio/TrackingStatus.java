@@ -0,0 +1,22 @@
+//
+//  TrackingStatus.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-06.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+/**
+ * Tells whether AdjustIo accepted an event or revenue for tracking.
+ */
+public enum TrackingStatus {
+    /** The activity will be tracked. */
+    ACCEPTED,
+    /** The activity exceeded the configured rate limit and was discarded. Try again later. */
+    THROTTLED,
+    /** The activity was discarded because AdjustIo is not ready or has too much pending work. */
+    DROPPED
+}
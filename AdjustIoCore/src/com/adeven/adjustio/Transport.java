@@ -0,0 +1,27 @@
+//
+//  Transport.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+
+/**
+ * Sends tracking requests to the server.
+ * <p/>
+ * Implementations throw {@link java.net.SocketTimeoutException} on timeouts
+ * and {@link java.net.ProtocolException} on protocol errors, so failures can
+ * be told apart.
+ */
+public interface Transport {
+    // the timeout in milliseconds applies to connecting and to every read
+    TrackingResponse send(TrackingRequest request, int timeout) throws IOException;
+
+    // open a connection to the tracking server and keep it for the next request
+    void connect(int timeout) throws IOException;
+}
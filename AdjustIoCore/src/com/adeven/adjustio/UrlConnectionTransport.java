@@ -0,0 +1,126 @@
+//
+//  UrlConnectionTransport.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-14.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Sends the requests with {@link HttpURLConnection}, for the JVM.
+ * <p/>
+ * Connections are kept alive by the JVM, host names are cached by the JVM as
+ * well (see networkaddress.cache.ttl). TLS sessions are cached by the
+ * SSLContext of the socket factory for as long as the process runs.
+ */
+public class UrlConnectionTransport implements Transport {
+    private final String           baseUrl;
+    private final SSLSocketFactory sslSocketFactory;
+    private final ResponseReader   responseReader;
+
+    public UrlConnectionTransport() {
+        this(null);
+    }
+
+    // send to another server than Constants.BASE_URL, for tests against a local server
+    public UrlConnectionTransport(String baseUrl) {
+        this(baseUrl, HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    // a socket factory of another SSLContext, for tests against a server with a self-signed certificate
+    public UrlConnectionTransport(String baseUrl, SSLSocketFactory sslSocketFactory) {
+        this.baseUrl = baseUrl;
+        this.sslSocketFactory = new CountingSslSocketFactory(sslSocketFactory);
+        this.responseReader = new ResponseReader();
+    }
+
+    @Override
+    public TrackingResponse send(TrackingRequest request, int timeout) throws IOException {
+        HttpURLConnection connection = openConnection(request.getUrl());
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(request.getBody().length);
+        connection.setRequestProperty("Content-Type", request.getContentType());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        OutputStream outputStream = connection.getOutputStream();
+        try {
+            outputStream.write(request.getBody());
+        } finally {
+            outputStream.close();
+        }
+
+        // the body of a successful request only matters if it carries data
+        int statusCode = connection.getResponseCode();
+        readBody(connection);
+        boolean bodyNeeded = statusCode != HttpURLConnection.HTTP_OK || request.isResponseBodyNeeded();
+        String body = bodyNeeded ? responseReader.getBody() : null;
+        return new TrackingResponse(statusCode, body);
+    }
+
+    // a HEAD request leaves an open connection in the keep-alive cache
+    @Override
+    public void connect(int timeout) throws IOException {
+        HttpURLConnection connection = openConnection(Constants.BASE_URL);
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setRequestMethod("HEAD");
+        connection.getResponseCode();
+        readBody(connection);
+    }
+
+    // the same socket factory for every connection, so connections and TLS sessions can be reused
+    private HttpURLConnection openConnection(String url) throws IOException {
+        if (baseUrl != null && url.startsWith(Constants.BASE_URL)) {
+            url = baseUrl + url.substring(Constants.BASE_URL.length());
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+        }
+        return connection;
+    }
+
+    // reading the whole body returns the connection to the keep-alive cache of the JVM,
+    // a connection with a longer body than expected gets closed instead
+    private void readBody(HttpURLConnection connection) throws IOException {
+        InputStream inputStream = connection.getErrorStream();
+        if (null == inputStream) {
+            inputStream = connection.getInputStream();
+        }
+
+        boolean complete = false;
+        try {
+            complete = responseReader.read(inputStream);
+        } finally {
+            if (complete) {
+                inputStream.close();
+            } else {
+                connection.disconnect();
+            }
+        }
+        if (!complete) {
+            Logger.debug(String.format(Locale.US, "Response longer than %d bytes, closed connection",
+                                       ResponseReader.MAX_BODY_LENGTH));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+//
+//  FlushResultStress.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-19.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+@JCStressTest
+@Description("A caller that sees a finished flush request sees all of its counts.")
+@Outcome(id = "-1", expect = Expect.ACCEPTABLE, desc = "Not finished yet.")
+@Outcome(id = "6", expect = Expect.ACCEPTABLE, desc = "Finished with all counts.")
+@Outcome(expect = Expect.FORBIDDEN, desc = "Torn result.")
+@State
+public class FlushResultStress {
+    private final FlushRequest flushRequest = new FlushRequest(0, null);
+
+    // the package thread counts two deliveries and a retry, then finishes with three remaining
+    @Actor
+    public void packageThread() {
+        flushRequest.packageDelivered();
+        flushRequest.packageDelivered();
+        flushRequest.packageRetried();
+        flushRequest.finish(3, false);
+    }
+
+    @Actor
+    public void caller(I_Result result) {
+        if (!flushRequest.isDone()) {
+            result.r1 = -1;
+            return;
+        }
+
+        FlushResult flushResult;
+        try {
+            flushResult = flushRequest.get();
+        } catch (Exception e) {
+            result.r1 = -2;
+            return;
+        }
+        result.r1 = flushResult.getDeliveredCount() + flushResult.getRetriedCount() + flushResult.getRemainingCount();
+    }
+}
@@ -0,0 +1,322 @@
+//
+//  PackageHandlerStress.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-19.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Hammers a PackageHandler from many threads with random adds, sends,
+ * flushes, pauses and resumes while the transport randomly fails, then
+ * drains the queue and checks that every package was delivered exactly once.
+ * <p/>
+ * The transport keeps a count per package, so lost packages, duplicate sends
+ * and a queue file that disagrees with the deliveries are detected. A package
+ * that the server accepted but whose response got lost is expected to be sent
+ * again and is not counted as a duplicate.
+ * <p/>
+ * Options are passed as key=value, see doc/stress.md.
+ */
+public class PackageHandlerStress {
+    private static final long DRAIN_TIMEOUT   = Constants.ONE_MINUTE;
+    private static final int  MAX_PAUSE       = 3; // milliseconds between two calls of a worker
+    private static final int  MAX_QUEUE_DEPTH = 50;
+
+    // transport outcomes
+    private static final int DELIVERED     = 0;
+    private static final int NETWORK_ERROR = 1;
+    private static final int TIMEOUT       = 2;
+    private static final int SERVER_ERROR  = 3;
+    private static final int LOST_RESPONSE = 4;
+    private static final int CLIENT_ERROR  = 5;
+
+    private final int    threads;
+    private final int    packagesPerThread;
+    private final double failureRate;
+    private final long   seed;
+
+    private final MemoryStorage      storage;
+    private final AtomicInteger      lastEventCount;
+    private final AtomicIntegerArray deliveries;
+    private final AtomicIntegerArray rejections;
+    private final AtomicIntegerArray serverErrors;
+    private final AtomicIntegerArray lostResponses;
+    private final Random             transportRandom;
+
+    private volatile boolean failing;
+    private PackageHandler   packageHandler;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        Logger.setLogLevelString(getString(options, "log", "assert"));
+
+        PackageHandlerStress stress = new PackageHandlerStress(options);
+        boolean passed = stress.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private PackageHandlerStress(Map<String, String> options) {
+        threads = getInt(options, "threads", 8);
+        packagesPerThread = getInt(options, "packages", 1000);
+        failureRate = Double.parseDouble(getString(options, "failures", "0.2"));
+        seed = Long.parseLong(getString(options, "seed", Long.toString(System.nanoTime())));
+
+        int packageCount = threads * packagesPerThread;
+        storage = new MemoryStorage();
+        lastEventCount = new AtomicInteger();
+        deliveries = new AtomicIntegerArray(packageCount + 1);
+        rejections = new AtomicIntegerArray(packageCount + 1);
+        serverErrors = new AtomicIntegerArray(packageCount + 1);
+        lostResponses = new AtomicIntegerArray(packageCount + 1);
+        transportRandom = new Random(seed);
+    }
+
+    private boolean run() throws Exception {
+        System.out.println(String.format(Locale.US,
+                                         "%d threads, %d packages each, failure rate %.2f, seed %d",
+                                         threads, packagesPerThread, failureRate, seed));
+
+        Platform platform = new JvmPlatform(storage, Clock.SYSTEM, null) {
+            @Override
+            public Transport newTransport() {
+                return new Transport() {
+                    @Override
+                    public TrackingResponse send(TrackingRequest request, int timeout) throws IOException {
+                        return respond(request);
+                    }
+
+                    @Override
+                    public void connect(int timeout) {
+                    }
+                };
+            }
+        };
+        packageHandler = new PackageHandler(platform, FlushPolicy.getDefault());
+
+        // hammer phase
+        failing = true;
+        long startedAt = System.currentTimeMillis();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final Random random = new Random(seed + i + 1);
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    hammer(random);
+                }
+            }, "stress " + i);
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        MetricsSnapshot afterHammer = Metrics.snapshot();
+
+        // drain phase, the transport stops failing so everything left must arrive
+        failing = false;
+        packageHandler.resumeSending();
+        FlushRequest flushRequest = new FlushRequest(DRAIN_TIMEOUT, null);
+        packageHandler.flushPackages(flushRequest);
+        FlushResult flushResult = flushRequest.get();
+        long finishedAt = System.currentTimeMillis();
+
+        return check(afterHammer, flushResult, finishedAt - startedAt);
+    }
+
+    // one worker thread: random calls in the mix of the SDK, mostly adds and sends
+    private void hammer(Random random) {
+        for (int i = 0; i < packagesPerThread; i++) {
+            packageHandler.addPackage(eventPackage(lastEventCount.incrementAndGet()));
+
+            int action = random.nextInt(100);
+            if (action < 60) {
+                packageHandler.sendFirstPackage();
+            } else if (action < 70) {
+                packageHandler.pauseSending();
+            } else if (action < 85) {
+                packageHandler.resumeSending();
+            } else if (action < 90) {
+                packageHandler.flushPackages();
+            } else if (action < 92) {
+                packageHandler.flushPackages(new FlushRequest(random.nextInt(50), null));
+            } else {
+                Thread.yield();
+            }
+
+            // every add and send rewrites the queue file, so a long queue makes the package thread
+            // fall further behind and the run would test serialization instead of the hand-offs
+            try {
+                Thread.sleep(random.nextInt(MAX_PAUSE));
+                while (Metrics.getQueueDepth() > MAX_QUEUE_DEPTH) {
+                    packageHandler.resumeSending();
+                    packageHandler.sendFirstPackage();
+                    Thread.sleep(1);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // runs on the request thread
+    private TrackingResponse respond(TrackingRequest request) throws IOException {
+        int eventCount = getEventCount(request);
+        if (eventCount <= 0 || eventCount >= deliveries.length()) {
+            throw new IllegalStateException("Unknown package in request");
+        }
+
+        int outcome = DELIVERED;
+        if (failing && transportRandom.nextDouble() < failureRate) {
+            outcome = 1 + transportRandom.nextInt(5);
+        }
+
+        switch (outcome) {
+            case NETWORK_ERROR:
+                throw new IOException("Simulated network error");
+            case TIMEOUT:
+                throw new SocketTimeoutException("Simulated timeout");
+            case SERVER_ERROR:
+                serverErrors.incrementAndGet(eventCount);
+                return new TrackingResponse(500, "{\"error\":\"simulated\"}");
+            case CLIENT_ERROR:
+                rejections.incrementAndGet(eventCount);
+                return new TrackingResponse(400, "{\"error\":\"simulated\"}");
+            case LOST_RESPONSE:
+                deliveries.incrementAndGet(eventCount);
+                lostResponses.incrementAndGet(eventCount);
+                throw new IOException("Simulated lost response");
+            default:
+                deliveries.incrementAndGet(eventCount);
+                return new TrackingResponse(200, "{}");
+        }
+    }
+
+    private boolean check(MetricsSnapshot afterHammer, FlushResult flushResult, long duration) {
+        int packageCount = lastEventCount.get();
+        int lost = 0;
+        int duplicates = 0;
+        int rejected = 0;
+        int resent = 0;
+
+        for (int eventCount = 1; eventCount <= packageCount; eventCount++) {
+            int delivered = deliveries.get(eventCount);
+            int allowed = 1 + lostResponses.get(eventCount);
+
+            // a package the server failed on too often gets dropped like a rejected one
+            if (rejections.get(eventCount) > 0 || serverErrors.get(eventCount) >= RequestHandler.MAX_SERVER_ERRORS) {
+                rejected++;
+                if (delivered > lostResponses.get(eventCount)) {
+                    duplicates++; // sent again after the server rejected it
+                }
+            } else if (delivered == 0) {
+                lost++;
+            } else if (delivered > allowed) {
+                duplicates++;
+            } else if (delivered > 1) {
+                resent++;
+            }
+        }
+
+        // the queue file has to agree with the deliveries
+        PackageQueue packageQueue = new PackageQueue(storage);
+        packageQueue.read();
+        int queued = packageQueue.size();
+
+        System.out.println(String.format(Locale.US, "duration            %.1f s", duration / 1000.0));
+        System.out.println(String.format(Locale.US, "packages            %d", packageCount));
+        System.out.println(String.format(Locale.US, "hammer phase        %d requests, %d retries, max queue %d",
+                                         afterHammer.getRequestsSent(), afterHammer.getRetries(),
+                                         afterHammer.getMaxQueueDepth()));
+        System.out.println(String.format(Locale.US, "drain               %s", flushResult));
+        System.out.println(String.format(Locale.US, "rejected            %d (dropped by the SDK as expected)", rejected));
+        System.out.println(String.format(Locale.US, "resent              %d (response lost, expected)", resent));
+        System.out.println(String.format(Locale.US, "lost                %d", lost));
+        System.out.println(String.format(Locale.US, "duplicates          %d", duplicates));
+        System.out.println(String.format(Locale.US, "queue file          %d packages", queued));
+        System.out.println(String.format(Locale.US, "sdk metrics         %s", Metrics.snapshot()));
+
+        boolean passed = lost == 0 && duplicates == 0 && queued == 0 && !flushResult.isTimedOut();
+        System.out.println(passed ? "PASSED" : "FAILED");
+        return passed;
+    }
+
+    protected static ActivityPackage eventPackage(int eventCount) {
+        PackageBuilder builder = new PackageBuilder();
+        builder.setPackageId(Tracing.nextPackageId());
+        builder.setAppToken("123456789012");
+        builder.setEventToken("abc123");
+        builder.setEventCount(eventCount);
+        builder.setSessionCount(1);
+        return builder.buildEventPackage();
+    }
+
+    private static int getEventCount(TrackingRequest request) throws UnsupportedEncodingException {
+        String body = new String(request.getBody(), "UTF-8");
+        String key = "event_count=";
+        int start;
+        if (body.startsWith(key)) {
+            start = key.length();
+        } else {
+            int index = body.indexOf("&" + key);
+            if (index < 0) {
+                return -1;
+            }
+            start = index + 1 + key.length();
+        }
+
+        int end = body.indexOf('&', start);
+        if (end < 0) {
+            end = body.length();
+        }
+        try {
+            return Integer.parseInt(body.substring(start, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) {
+                throw new IllegalArgumentException(String.format("Expected key=value instead of '%s'", arg));
+            }
+            options.put(arg.substring(0, index), arg.substring(index + 1));
+        }
+        return options;
+    }
+
+    private static String getString(Map<String, String> options, String key, String defaultValue) {
+        String value = options.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int getInt(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+}
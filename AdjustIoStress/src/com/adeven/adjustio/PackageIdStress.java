@@ -0,0 +1,44 @@
+//
+//  PackageIdStress.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-19.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.Z_Result;
+
+@JCStressTest
+@Description("Package ids taken on the calling thread and the activity thread never collide.")
+@Outcome(id = "true", expect = Expect.ACCEPTABLE, desc = "Different ids.")
+@Outcome(id = "false", expect = Expect.FORBIDDEN, desc = "Two packages got the same id.")
+@State
+public class PackageIdStress {
+    private long callerId;
+    private long activityId;
+
+    @Actor
+    public void caller() {
+        callerId = Tracing.nextPackageId();
+    }
+
+    @Actor
+    public void activity() {
+        activityId = Tracing.nextPackageId();
+    }
+
+    @Arbiter
+    public void arbiter(Z_Result result) {
+        result.r1 = callerId != activityId;
+    }
+}
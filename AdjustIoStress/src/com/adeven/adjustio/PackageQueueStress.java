@@ -0,0 +1,48 @@
+//
+//  PackageQueueStress.java
+//  AdjustIo
+//
+//  Created by adeven on 2013-11-19.
+//  Copyright (c) 2013 adeven. All rights reserved.
+//  See the file MIT-LICENSE for copying permission.
+//
+
+package com.adeven.adjustio;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+@JCStressTest
+@Description("Reading the queue file while it gets written returns the old or the new queue, never a part.")
+@Outcome(id = "1", expect = Expect.ACCEPTABLE, desc = "Old queue.")
+@Outcome(id = "3", expect = Expect.ACCEPTABLE, desc = "New queue.")
+@Outcome(expect = Expect.FORBIDDEN, desc = "Torn queue file.")
+@State
+public class PackageQueueStress {
+    private final MemoryStorage storage = new MemoryStorage();
+    private final PackageQueue  writer  = new PackageQueue(storage);
+
+    public PackageQueueStress() {
+        writer.add(PackageHandlerStress.eventPackage(1));
+        writer.write();
+        writer.add(PackageHandlerStress.eventPackage(2));
+        writer.add(PackageHandlerStress.eventPackage(3));
+    }
+
+    @Actor
+    public void packageThread() {
+        writer.write();
+    }
+
+    @Actor
+    public void reader(I_Result result) {
+        PackageQueue reader = new PackageQueue(storage);
+        reader.read();
+        result.r1 = reader.size();
+    }
+}